@@ -0,0 +1,104 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.bergerkiller.bukkit.common.map;
+
+import com.bergerkiller.bukkit.common.map.color.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import tech.sbdevelopment.mapreflectionapi.BenchmarkEnvironment;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the {@link MapColorLookup} backends that can be selected in the config.
+ * <p>
+ * The accuracy is measured separately, run it with
+ * <code>java -cp benchmarks/target/benchmarks.jar com.bergerkiller.bukkit.common.map.MapColorLookupBenchmark</code>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapColorLookupBenchmark {
+    private static final int COLORS = 4096;
+
+    @Param({"FULL", "REDUCED", "KD_TREE"})
+    public MapColorLookup.Type type;
+
+    private final int[] rgb = new int[COLORS];
+    private MapColorLookup lookup;
+
+    @Setup
+    public void setup() {
+        //Without a lookup factory, the palette uses the full color space data
+        BenchmarkEnvironment.loadPalette();
+        lookup = create(type, (MapColorSpaceData) MapColorPalette.getColorLookup());
+
+        Random random = new Random(1);
+        for (int i = 0; i < COLORS; i++) {
+            rgb[i] = random.nextInt(0x1000000);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COLORS)
+    public void get(Blackhole blackhole) {
+        for (int color : rgb) {
+            blackhole.consume(lookup.get((color >> 16) & 0xFF, (color >> 8) & 0xFF, color & 0xFF));
+        }
+    }
+
+    /**
+     * Prints how many of all rgb values every backend matches to the same map color as the full table
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        BenchmarkEnvironment.loadPalette();
+        MapColorSpaceData data = (MapColorSpaceData) MapColorPalette.getColorLookup();
+        for (MapColorLookup.Type type : MapColorLookup.Type.values()) {
+            MapColorLookup lookup = create(type, data);
+            long start = System.nanoTime();
+            int agreeing = 0;
+            for (int color = 0; color < (1 << 24); color++) {
+                int r = (color >> 16) & 0xFF, g = (color >> 8) & 0xFF, b = color & 0xFF;
+                if (lookup.get(r, g, b) == data.get(r, g, b)) {
+                    agreeing++;
+                }
+            }
+            System.out.printf("%s: %.4f%% agrees with FULL (%d of %d colors differ), %d KiB, checked in %d ms%n",
+                    type, agreeing * 100.0 / (1 << 24), (1 << 24) - agreeing, 1 << 24,
+                    lookup.getMemoryUsage() >> 10, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private static MapColorLookup create(MapColorLookup.Type type, MapColorSpaceData data) {
+        switch (type) {
+            case REDUCED:
+                return new MCSDReducedLookup(data, 6, true);
+            case KD_TREE:
+                return new MCSDKdTreeLookup(data);
+            default:
+                return data;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.bergerkiller.bukkit.common.map;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import tech.sbdevelopment.mapreflectionapi.BenchmarkEnvironment;
+
+import java.awt.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the conversion of RGB colors to map colors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapColorPaletteBenchmark {
+    private static final int COLORS = 4096;
+
+    private final int[] rgb = new int[COLORS];
+    private final Color[] colors = new Color[COLORS];
+
+    @Setup
+    public void setup() {
+        BenchmarkEnvironment.loadPalette();
+        Random random = new Random(1);
+        for (int i = 0; i < COLORS; i++) {
+            rgb[i] = random.nextInt(0x1000000);
+            colors[i] = new Color(rgb[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COLORS)
+    public void getColorRGB(Blackhole blackhole) {
+        for (int color : rgb) {
+            blackhole.consume(MapColorPalette.getColor((color >> 16) & 0xFF, (color >> 8) & 0xFF, color & 0xFF));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COLORS)
+    public void getColorAWT(Blackhole blackhole) {
+        for (Color color : colors) {
+            blackhole.consume(MapColorPalette.getColor(color));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.bergerkiller.bukkit.common.map;
+
+import com.bergerkiller.bukkit.common.map.color.MCSDBubbleFormat;
+import com.bergerkiller.bukkit.common.map.color.MapColorSpaceData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks loading the color space data, from the bundled bubble format and from the palette cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MapColorSpaceDataBenchmark {
+    @Param({"map_1_12", "map_1_16", "map_1_17"})
+    public String version;
+
+    private byte[] bubbleData;
+    private ByteBuffer cacheData;
+
+    @Setup
+    public void setup() throws IOException {
+        try (InputStream input = MapColorPalette.class.getResourceAsStream("/tech/sbdevelopment/mapreflectionapi/libs/bkcommonlib/internal/resources/map/" + version + ".bub")) {
+            if (input == null) throw new IOException("The color space data of " + version + " is missing");
+            bubbleData = input.readAllBytes();
+        }
+
+        MCSDBubbleFormat bubbleFormat = new MCSDBubbleFormat();
+        bubbleFormat.readFrom(new ByteArrayInputStream(bubbleData));
+        ByteArrayOutputStream output = new ByteArrayOutputStream(MapColorSpaceData.getSerializedSize());
+        bubbleFormat.writeTo(Channels.newChannel(output));
+        cacheData = ByteBuffer.wrap(output.toByteArray());
+    }
+
+    @Benchmark
+    public MCSDBubbleFormat readBubbleFormat() throws IOException {
+        MCSDBubbleFormat bubbleFormat = new MCSDBubbleFormat();
+        bubbleFormat.readFrom(new ByteArrayInputStream(bubbleData));
+        return bubbleFormat;
+    }
+
+    @Benchmark
+    public MapColorSpaceData readCache() {
+        MapColorSpaceData data = new MapColorSpaceData();
+        data.readFrom(cacheData.duplicate());
+        return data;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi;
+
+import com.bergerkiller.bukkit.common.map.MapColorPalette;
+import org.bukkit.entity.Player;
+import tech.sbdevelopment.mapreflectionapi.api.ArrayImage;
+import tech.sbdevelopment.mapreflectionapi.api.MapManager;
+
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * The {@link BenchmarkEnvironment} replaces the parts of the server that the benchmarks need.
+ */
+public final class BenchmarkEnvironment {
+    private BenchmarkEnvironment() {
+    }
+
+    /**
+     * Load the color palette on this thread
+     */
+    public static void loadPalette() {
+        MapColorPalette.awaitLoaded();
+    }
+
+    /**
+     * Set the {@link MapManager} that is returned by {@link MapReflectionAPI#getMapManager()}
+     *
+     * @param manager The manager to use
+     */
+    public static void setMapManager(MapManager manager) {
+        try {
+            Field field = MapReflectionAPI.class.getDeclaredField("mapManager");
+            field.setAccessible(true);
+            field.set(null, manager);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Couldn't set the map manager", ex);
+        }
+    }
+
+    /**
+     * Create a player that only has a name and a {@link UUID}
+     * The player is always online, all other methods return <code>null</code>, <code>false</code> or <code>0</code>.
+     *
+     * @param name The name of the player
+     * @return The player
+     */
+    public static Player createPlayer(String name) {
+        UUID uuid = UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(StandardCharsets.UTF_8));
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getUniqueId":
+                    return uuid;
+                case "getName":
+                    return name;
+                case "isOnline":
+                    return true;
+                case "hashCode":
+                    return uuid.hashCode();
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "Player{name=" + name + "}";
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    /**
+     * Create an {@link ArrayImage} with random map colors
+     *
+     * @param random The random to use
+     * @param width  The width of the image
+     * @param height The height of the image
+     * @return The image
+     */
+    public static ArrayImage createArrayImage(Random random, int width, int height) {
+        byte[] array = new byte[width * height];
+        for (int i = 0; i < array.length; i++) {
+            //Skip the transparent colors
+            array[i] = (byte) (4 + random.nextInt(200));
+        }
+        return new ArrayImage(array, width, height);
+    }
+
+    /**
+     * Create a {@link BufferedImage} with a gradient and noise, which looks more like a real image than only noise
+     *
+     * @param random The random to use
+     * @param type   The {@link BufferedImage} type
+     * @param width  The width of the image
+     * @param height The height of the image
+     * @return The image
+     */
+    public static BufferedImage createBufferedImage(Random random, int type, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = clamp(x * 255 / width + random.nextInt(32) - 16);
+                int g = clamp(y * 255 / height + random.nextInt(32) - 16);
+                int b = clamp((x + y) * 255 / (width + height) + random.nextInt(32) - 16);
+                image.setRGB(x, y, 0xFF000000 | (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) return null;
+        return Array.get(Array.newInstance(type, 1), 0);
+    }
+}
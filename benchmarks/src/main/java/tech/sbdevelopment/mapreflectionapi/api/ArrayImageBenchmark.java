@@ -0,0 +1,68 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api;
+
+import org.openjdk.jmh.annotations.*;
+import tech.sbdevelopment.mapreflectionapi.BenchmarkEnvironment;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the conversion between {@link BufferedImage}s and {@link ArrayImage}s.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArrayImageBenchmark {
+    @Param({"TYPE_INT_ARGB", "TYPE_INT_RGB", "TYPE_3BYTE_BGR", "TYPE_4BYTE_ABGR", "TYPE_BYTE_INDEXED"})
+    public String type;
+    @Param({"128", "512"})
+    public int size;
+
+    private BufferedImage image;
+    private ArrayImage arrayImage;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        BenchmarkEnvironment.loadPalette();
+        int imageType = BufferedImage.class.getField(type).getInt(null);
+        image = BenchmarkEnvironment.createBufferedImage(new Random(1), imageType, size, size);
+        arrayImage = new ArrayImage(image);
+    }
+
+    @Benchmark
+    public ArrayImage fromBuffered() {
+        return new ArrayImage(image);
+    }
+
+    @Benchmark
+    public BufferedImage toBuffered() {
+        return arrayImage.toBuffered();
+    }
+
+    @Benchmark
+    public ArrayImage coarse() {
+        return arrayImage.getCoarse(4);
+    }
+}
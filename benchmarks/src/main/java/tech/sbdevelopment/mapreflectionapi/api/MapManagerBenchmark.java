@@ -0,0 +1,98 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api;
+
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.*;
+import tech.sbdevelopment.mapreflectionapi.BenchmarkEnvironment;
+import tech.sbdevelopment.mapreflectionapi.api.exceptions.MapLimitExceededException;
+
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the lookups of the {@link MapManager} with many managed maps.
+ * The player views every map, like a player that has seen all the maps of a server.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MapManagerBenchmark {
+    //The size of the content only changes the cost of hashing, which the ArrayImage benchmarks cover
+    private static final int CONTENT_SIZE = 16;
+
+    @Param({"1000", "10000", "100000"})
+    public int maps;
+
+    private MapManager manager;
+    private Player player;
+    private ArrayImage duplicate;
+    private ArrayImage unique;
+
+    @Setup
+    public void setup() throws MapLimitExceededException {
+        manager = new MapManager();
+        player = BenchmarkEnvironment.createPlayer("Benchmark");
+
+        //Hand out the IDs in order during the setup, otherwise adding the viewers takes quadratic time
+        BenchmarkEnvironment.setMapManager(new MapManager() {
+            private int nextId;
+
+            @Override
+            public int getNextFreeIdFor(Player player) {
+                return ++nextId;
+            }
+        });
+
+        Random random = new Random(1);
+        for (int i = 0; i < maps; i++) {
+            MapWrapper wrapper = new MapWrapper(BenchmarkEnvironment.createArrayImage(random, CONTENT_SIZE, CONTENT_SIZE));
+            wrapper.retain();
+            wrapper.getController().addViewer(player);
+            manager.managedMaps.add(wrapper);
+
+            wrapper.contentHash = wrapper.getContent().hashCode();
+            manager.contentIndex.computeIfAbsent(wrapper.contentHash, hash -> new CopyOnWriteArrayList<>()).add(wrapper);
+        }
+        BenchmarkEnvironment.setMapManager(manager);
+
+        ArrayImage existing = manager.managedMaps.get(maps / 2).getContent();
+        duplicate = new ArrayImage(existing.array.clone(), CONTENT_SIZE, CONTENT_SIZE);
+        unique = BenchmarkEnvironment.createArrayImage(random, CONTENT_SIZE, CONTENT_SIZE);
+    }
+
+    @Benchmark
+    public int getNextFreeIdFor() throws MapLimitExceededException {
+        return manager.getNextFreeIdFor(player);
+    }
+
+    @Benchmark
+    public MapWrapper getDuplicateHit() {
+        return manager.getDuplicate(duplicate);
+    }
+
+    @Benchmark
+    public MapWrapper getDuplicateMiss() {
+        return manager.getDuplicate(unique);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api;
+
+import org.openjdk.jmh.annotations.*;
+import tech.sbdevelopment.mapreflectionapi.BenchmarkEnvironment;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks splitting an {@link ArrayImage} into the maps of a {@link MultiMapWrapper}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiMapWrapperBenchmark {
+    @Param({"2", "4", "8"})
+    public int maps;
+
+    private MethodHandle splitImage;
+    private ArrayImage image;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        //Wrapping also registers the maps, so only the split itself is measured
+        splitImage = MethodHandles.privateLookupIn(MultiMapWrapper.class, MethodHandles.lookup())
+                .findStatic(MultiMapWrapper.class, "splitImage", MethodType.methodType(ArrayImage[][].class, ArrayImage.class, int.class, int.class));
+        image = BenchmarkEnvironment.createArrayImage(new Random(1), maps * 128, maps * 128);
+    }
+
+    @Benchmark
+    public ArrayImage[][] split() throws Throwable {
+        return (ArrayImage[][]) splitImage.invokeExact(image, maps, maps);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.loadtest;
+
+import com.cryptomorin.xseries.reflection.minecraft.MinecraftConnection;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.minecraft.network.protocol.game.PacketPlayOutMap;
+import org.bukkit.entity.Player;
+import tech.sbdevelopment.mapreflectionapi.BenchmarkEnvironment;
+import tech.sbdevelopment.mapreflectionapi.api.ArrayImage;
+import tech.sbdevelopment.mapreflectionapi.api.MapManager;
+import tech.sbdevelopment.mapreflectionapi.api.MapWrapper;
+import tech.sbdevelopment.mapreflectionapi.api.MultiMapWrapper;
+import tech.sbdevelopment.mapreflectionapi.api.exceptions.MapLimitExceededException;
+import tech.sbdevelopment.mapreflectionapi.listeners.MapPacketHandler;
+
+import java.util.*;
+
+/**
+ * The {@link LoadTest} simulates players that look at map walls, without a Minecraft server.
+ * Every player has a netty channel with the {@link MapPacketHandler}, in the same place as on a server.
+ * <p>
+ * Run it with <code>java -cp benchmarks/target/benchmarks.jar tech.sbdevelopment.mapreflectionapi.loadtest.LoadTest [option=value...]</code>
+ * <ul>
+ *     <li><code>players</code> The amount of players, default 50</li>
+ *     <li><code>walls</code> The amount of walls, which every player views, default 4</li>
+ *     <li><code>rows</code> and <code>columns</code> The size of a wall in maps, default 4 by 4</li>
+ *     <li><code>ticks</code> The length of the test in ticks, default 1200</li>
+ *     <li><code>interval</code> The ticks between updates of every wall, default 10</li>
+ *     <li><code>imageCache</code>, <code>progressive</code> The configuration options, default true and false</li>
+ * </ul>
+ */
+public final class LoadTest {
+    private static final double MS_PER_TICK = 50;
+
+    private final Map<String, String> options;
+    private final List<SimulatedPlayer> players = new ArrayList<>();
+    private final Map<UUID, SimulatedPlayer> playersById = new HashMap<>();
+    private final List<MultiMapWrapper> walls = new ArrayList<>();
+    private final Random random = new Random(1);
+    private final long[] tickNanos;
+    private long[] latencies = new long[1024];
+    private int latencyCount;
+    private long packets;
+    private long bytes;
+    private long handlerNanos;
+
+    private LoadTest(Map<String, String> options) {
+        this.options = options;
+        this.tickNanos = new long[getInt("ticks", 1200)];
+    }
+
+    public static void main(String[] args) throws MapLimitExceededException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) throw new IllegalArgumentException("Options are given as option=value, not " + arg);
+            options.put(option[0], option[1]);
+        }
+        new LoadTest(options).run();
+    }
+
+    private void run() throws MapLimitExceededException {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("imageCache", getBoolean("imageCache", true));
+        settings.put("progressiveEnabled", getBoolean("progressive", false));
+        settings.put("progressiveBlockSize", 4);
+        settings.put("progressivePasses", 4);
+        settings.put("lodBlockSize", 2);
+        SimulatedServer server = SimulatedServer.install(settings);
+
+        BenchmarkEnvironment.loadPalette();
+        MapManager manager = new MapManager();
+        BenchmarkEnvironment.setMapManager(manager);
+
+        //The packets are written to the channel of the player like the server does, the time of the handlers is measured separately
+        MinecraftConnection.setPacketHandler((player, packet) -> {
+            long start = System.nanoTime();
+            playersById.get(player.getUniqueId()).channel.writeAndFlush(packet);
+            handlerNanos += System.nanoTime() - start;
+        });
+
+        for (int i = 0; i < getInt("players", 50); i++) {
+            SimulatedPlayer player = new SimulatedPlayer(BenchmarkEnvironment.createPlayer("Player" + i));
+            players.add(player);
+            playersById.put(player.player.getUniqueId(), player);
+            server.addPlayer(player.player);
+        }
+
+        int rows = getInt("rows", 4);
+        int columns = getInt("columns", 4);
+        for (int i = 0; i < getInt("walls", 4); i++) {
+            MultiMapWrapper wall = manager.wrapMultiImage(BenchmarkEnvironment.createArrayImage(random, columns * 128, rows * 128), rows, columns);
+            for (SimulatedPlayer player : players) {
+                wall.getController().addViewer(player.player);
+                wall.getController().sendContent(player.player);
+            }
+            walls.add(wall);
+        }
+        markPending(manager, 0);
+
+        int interval = getInt("interval", 10);
+        for (int tick = 0; tick < tickNanos.length; tick++) {
+            //Creating the frames is the work of the plugin that uses the API, so it is not measured
+            List<ArrayImage> frames = new ArrayList<>();
+            if (tick > 0 && tick % interval == 0) {
+                for (int i = 0; i < walls.size(); i++) {
+                    frames.add(BenchmarkEnvironment.createArrayImage(random, columns * 128, rows * 128));
+                }
+            }
+
+            long handlerBefore = handlerNanos;
+            long start = System.nanoTime();
+            for (int i = 0; i < frames.size(); i++) {
+                walls.get(i).getController().update(frames.get(i));
+            }
+            server.tick();
+            tickNanos[tick] = System.nanoTime() - start - (handlerNanos - handlerBefore);
+
+            if (!frames.isEmpty()) markPending(manager, server.getCurrentTick());
+            receive(server.getCurrentTick());
+        }
+
+        report(rows, columns, interval);
+    }
+
+    private void markPending(MapManager manager, long tick) {
+        //The latency of a map is measured from the oldest update that hasn't been received yet
+        for (SimulatedPlayer player : players) {
+            for (MapWrapper wrapper : manager.getMapsVisibleTo(player.player)) {
+                player.pending.putIfAbsent(wrapper.getController().getMapId(player.player), tick);
+            }
+        }
+    }
+
+    private void receive(long tick) {
+        for (SimulatedPlayer player : players) {
+            Object packet;
+            while ((packet = player.channel.readOutbound()) != null) {
+                if (!(packet instanceof PacketPlayOutMap)) continue;
+
+                PacketPlayOutMap mapPacket = (PacketPlayOutMap) packet;
+                packets++;
+                bytes += mapPacket.getSize();
+
+                Long since = player.pending.remove(mapPacket.mapId().c());
+                if (since != null) addLatency(tick - since);
+            }
+        }
+    }
+
+    private void addLatency(long ticks) {
+        if (latencyCount == latencies.length) latencies = Arrays.copyOf(latencies, latencyCount * 2);
+        latencies[latencyCount++] = ticks;
+    }
+
+    private void report(int rows, int columns, int interval) {
+        double seconds = tickNanos.length / (1000 / MS_PER_TICK);
+        int undelivered = players.stream().mapToInt(player -> player.pending.size()).sum();
+        long[] latency = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(latency);
+        long[] ticks = tickNanos.clone();
+        Arrays.sort(ticks);
+        double meanTick = Arrays.stream(ticks).average().orElse(0) / 1e6;
+
+        System.out.printf("Players: %d, walls: %d of %dx%d maps, %d ticks (%.1f s), update every %d ticks%n",
+                players.size(), walls.size(), columns, rows, tickNanos.length, seconds, interval);
+        System.out.printf("Packets: %d (%.1f/s), bytes: %d (%.2f MiB/s)%n",
+                packets, packets / seconds, bytes, bytes / seconds / (1024 * 1024));
+        System.out.printf("Queue latency (ms): p50 %.0f, p90 %.0f, p99 %.0f, max %.0f, undelivered maps: %d%n",
+                percentile(latency, 50) * MS_PER_TICK, percentile(latency, 90) * MS_PER_TICK,
+                percentile(latency, 99) * MS_PER_TICK, percentile(latency, 100) * MS_PER_TICK, undelivered);
+        System.out.printf("Main thread per tick (ms): mean %.3f, p99 %.3f, max %.3f (%.1f%% of a tick)%n",
+                meanTick, percentile(ticks, 99) / 1e6, percentile(ticks, 100) / 1e6, meanTick / MS_PER_TICK * 100);
+        System.out.printf("Netty handlers per packet (us): mean %.2f%n", packets > 0 ? handlerNanos / 1e3 / packets : 0);
+    }
+
+    private static double percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.max(0, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1)];
+    }
+
+    private int getInt(String option, int defaultValue) {
+        return options.containsKey(option) ? Integer.parseInt(options.get(option)) : defaultValue;
+    }
+
+    private boolean getBoolean(String option, boolean defaultValue) {
+        return options.containsKey(option) ? Boolean.parseBoolean(options.get(option)) : defaultValue;
+    }
+
+    private static final class SimulatedPlayer {
+        private final Player player;
+        private final EmbeddedChannel channel = new EmbeddedChannel();
+        private final Map<Integer, Long> pending = new HashMap<>();
+
+        private SimulatedPlayer(Player player) {
+            this.player = player;
+
+            //The handler of the server, the PacketListener adds the MapPacketHandler before it
+            channel.pipeline().addLast("packet_handler", new ChannelDuplexHandler());
+            channel.pipeline().addBefore("packet_handler", player.getName(), new MapPacketHandler(player));
+        }
+    }
+}
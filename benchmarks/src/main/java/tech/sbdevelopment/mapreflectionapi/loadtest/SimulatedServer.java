@@ -0,0 +1,223 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.loadtest;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import sun.misc.Unsafe;
+import tech.sbdevelopment.mapreflectionapi.MapReflectionAPI;
+import tech.sbdevelopment.mapreflectionapi.managers.Configuration;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * The {@link SimulatedServer} stands in for the Bukkit server during a load test.
+ * The main thread is the thread that installs it, and the scheduler only runs when {@link #tick()} is called.
+ */
+public final class SimulatedServer {
+    private final Thread mainThread = Thread.currentThread();
+    private final Logger logger = Logger.getLogger("LoadTest");
+    private final Map<UUID, Player> players = new LinkedHashMap<>();
+    private final List<Task> tasks = new ArrayList<>();
+    private final Server server;
+    private int nextTaskId = 1;
+    private Task runningTask;
+    private long currentTick;
+
+    private SimulatedServer() {
+        BukkitScheduler scheduler = proxy(BukkitScheduler.class, this::handleScheduler);
+        PluginManager pluginManager = proxy(PluginManager.class, (method, args) -> null);
+        this.server = proxy(Server.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return "LoadTest";
+                case "getVersion":
+                    return "LoadTest (MC: 1.21)";
+                case "getBukkitVersion":
+                    return "1.21-R0.1-SNAPSHOT";
+                case "getLogger":
+                    return logger;
+                case "isPrimaryThread":
+                    return Thread.currentThread() == mainThread;
+                case "getScheduler":
+                    return scheduler;
+                case "getPluginManager":
+                    return pluginManager;
+                case "getOnlinePlayers":
+                    return Collections.unmodifiableCollection(players.values());
+                case "getPlayer":
+                    return args[0] instanceof UUID ? players.get(args[0]) : null;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /**
+     * Install the simulated server, together with the plugin instance and its configuration
+     * This can only be done once per JVM, because {@link Bukkit#setServer(Server)} can only be called once.
+     *
+     * @param settings The configuration fields to set, by field name
+     * @return The simulated server
+     */
+    public static SimulatedServer install(Map<String, Object> settings) {
+        SimulatedServer simulated = new SimulatedServer();
+        Bukkit.setServer(simulated.server);
+
+        try {
+            //The plugin and configuration need a plugin class loader and data folder, so their constructors are skipped
+            Field unsafeField = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            Unsafe unsafe = (Unsafe) unsafeField.get(null);
+
+            MapReflectionAPI plugin = (MapReflectionAPI) unsafe.allocateInstance(MapReflectionAPI.class);
+            setField(JavaPlugin.class, plugin, "server", simulated.server);
+            setField(MapReflectionAPI.class, null, "instance", plugin);
+
+            Configuration configuration = (Configuration) unsafe.allocateInstance(Configuration.class);
+            for (Map.Entry<String, Object> setting : settings.entrySet()) {
+                setField(Configuration.class, configuration, setting.getKey(), setting.getValue());
+            }
+            setField(Configuration.class, null, "instance", configuration);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Couldn't install the simulated plugin", ex);
+        }
+        return simulated;
+    }
+
+    /**
+     * Add a player to the online players
+     *
+     * @param player The player
+     */
+    public void addPlayer(Player player) {
+        players.put(player.getUniqueId(), player);
+    }
+
+    /**
+     * Run the tasks of the next tick on the current thread
+     */
+    public void tick() {
+        currentTick++;
+        for (Task task : new ArrayList<>(tasks)) {
+            if (task.cancelled || task.nextTick > currentTick) continue;
+
+            runningTask = task;
+            try {
+                task.runnable.run();
+            } finally {
+                runningTask = null;
+            }
+
+            if (task.period > 0) {
+                task.nextTick = currentTick + task.period;
+            } else {
+                task.cancelled = true;
+            }
+        }
+        tasks.removeIf(task -> task.cancelled);
+    }
+
+    /**
+     * Get the amount of ticks that have run
+     *
+     * @return The current tick
+     */
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    private Object handleScheduler(Method method, Object[] args) {
+        switch (method.getName()) {
+            case "scheduleSyncRepeatingTask":
+                return schedule((Runnable) args[1], (long) args[2], (long) args[3]).id;
+            case "scheduleSyncDelayedTask":
+                return schedule((Runnable) args[1], args.length > 2 ? (long) args[2] : 0, 0).id;
+            case "runTask":
+                schedule((Runnable) args[1], 0, 0);
+                return null;
+            case "isQueued":
+                return tasks.stream().anyMatch(task -> task.id == (int) args[0] && !task.cancelled);
+            case "isCurrentlyRunning":
+                return runningTask != null && runningTask.id == (int) args[0];
+            case "cancelTask":
+                tasks.stream().filter(task -> task.id == (int) args[0]).forEach(task -> task.cancelled = true);
+                return null;
+            default:
+                throw new UnsupportedOperationException("The simulated scheduler doesn't support " + method.getName());
+        }
+    }
+
+    private Task schedule(Runnable runnable, long delay, long period) {
+        //Like Bukkit, a task without delay runs on the next tick
+        Task task = new Task(nextTaskId++, runnable, currentTick + Math.max(1, delay), period);
+        tasks.add(task);
+        return task;
+    }
+
+    private static void setField(Class<?> clazz, Object object, String name, Object value) throws ReflectiveOperationException {
+        Field field = clazz.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(object, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return type.getSimpleName() + "@LoadTest";
+                }
+            }
+            return handler.handle(method, args);
+        });
+    }
+
+    private interface Handler {
+        Object handle(Method method, Object[] args) throws Throwable;
+    }
+
+    private static final class Task {
+        private final int id;
+        private final Runnable runnable;
+        private final long period;
+        private long nextTick;
+        private boolean cancelled;
+
+        private Task(int id, Runnable runnable, long nextTick, long period) {
+            this.id = id;
+            this.runnable = runnable;
+            this.nextTick = nextTick;
+            this.period = period;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the cached reflection calls of {@link ReflectionUtil}, compared to calling the code directly.
+ * The calls have the same shape as the packets that the plugin creates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReflectionUtilBenchmark {
+    private final byte[] data = new byte[128 * 128];
+    private final ReflectionUtil.CollectionParam<Object> icons = new ReflectionUtil.CollectionParam<>();
+    private final Target target = new Target(1, data);
+
+    @Benchmark
+    public Target constructorDirect() {
+        return new Target(1, data);
+    }
+
+    @Benchmark
+    public Object callConstructor() {
+        return ReflectionUtil.callConstructor(Target.class, 1, data);
+    }
+
+    @Benchmark
+    public Object callConstructorNewData() {
+        //Like the map packets, which get a new array with the colors of the region every time
+        return ReflectionUtil.callConstructor(Target.class, 1, new byte[16]);
+    }
+
+    @Benchmark
+    public Object callConstructorCollection() {
+        return ReflectionUtil.callConstructor(Target.class, 1, false, icons);
+    }
+
+    @Benchmark
+    public int methodDirect() {
+        return target.add(2);
+    }
+
+    @Benchmark
+    public Object callMethod() {
+        return ReflectionUtil.callMethod(target, "add", 2);
+    }
+
+    @Benchmark
+    public Object getDeclaredField() {
+        return ReflectionUtil.getDeclaredField(target, "value");
+    }
+
+    @Benchmark
+    public void setDeclaredField() {
+        ReflectionUtil.setDeclaredField(target, "value", 3);
+    }
+
+    /**
+     * Stand-in for an NMS class
+     */
+    public static class Target {
+        private int value;
+
+        public Target(int value, byte[] data) {
+            this.value = value + data.length;
+        }
+
+        public Target(int value, boolean flag, Collection<?> icons) {
+            this.value = flag ? value : icons.size();
+        }
+
+        public int add(int amount) {
+            return value + amount;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.cryptomorin.xseries.reflection;
+
+/**
+ * Stub of XReflection for the benchmarks.
+ * The benchmarks run without a server, so only the stand-ins in <code>net.minecraft</code> exist.
+ */
+public final class XReflection {
+    /**
+     * The minor version that is reported as the server version, can be set with <code>-Dmapreflectionapi.minor</code>
+     */
+    public static final int MINOR_NUMBER = Integer.getInteger("mapreflectionapi.minor", 21);
+    /**
+     * The patch version that is reported as the server version, can be set with <code>-Dmapreflectionapi.patch</code>
+     */
+    public static final int PATCH_NUMBER = Integer.getInteger("mapreflectionapi.patch", 0);
+
+    private XReflection() {
+    }
+
+    public static boolean supports(int minorNumber) {
+        return MINOR_NUMBER >= minorNumber;
+    }
+
+    public static boolean supports(int minorNumber, int patchNumber) {
+        return MINOR_NUMBER > minorNumber || (MINOR_NUMBER == minorNumber && PATCH_NUMBER >= patchNumber);
+    }
+
+    public static Class<?> getNMSClass(String packageName, String name) {
+        return findClass("net.minecraft." + packageName + "." + name);
+    }
+
+    public static Class<?> getNMSClass(String name) {
+        return findClass("net.minecraft.server." + name);
+    }
+
+    public static Class<?> getCraftClass(String name) {
+        return findClass("org.bukkit.craftbukkit." + name);
+    }
+
+    private static Class<?> findClass(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException ex) {
+            return null;
+        }
+    }
+}
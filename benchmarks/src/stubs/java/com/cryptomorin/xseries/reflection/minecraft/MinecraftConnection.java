@@ -0,0 +1,58 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.cryptomorin.xseries.reflection.minecraft;
+
+import org.bukkit.entity.Player;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Stub of MinecraftConnection for the benchmarks.
+ * Players have no connection, so packets are dropped unless a packet handler is set.
+ */
+public final class MinecraftConnection {
+    private static volatile BiConsumer<Player, Object> packetHandler = (player, packet) -> {
+    };
+
+    private MinecraftConnection() {
+    }
+
+    /**
+     * Set the handler that receives the packets sent to players
+     *
+     * @param handler The handler
+     */
+    public static void setPacketHandler(BiConsumer<Player, Object> handler) {
+        packetHandler = handler;
+    }
+
+    public static Object getHandle(Player player) {
+        return null;
+    }
+
+    public static Object getConnection(Player player) {
+        return null;
+    }
+
+    public static void sendPacket(Player player, Object... packets) {
+        for (Object packet : packets) {
+            packetHandler.accept(player, packet);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.minecraft.network.protocol.game;
+
+import net.minecraft.world.level.saveddata.maps.MapId;
+import net.minecraft.world.level.saveddata.maps.WorldMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Stand-in for the map packet record of 1.20.5+, with the same field names and constructors.
+ */
+public final class PacketPlayOutMap {
+    //Rough size of the fields besides the colors: packet ID, map ID, scale, locked, icons and patch header
+    private static final int HEADER_SIZE = 12;
+
+    private final MapId b;
+    private final byte c;
+    private final boolean d;
+    private final Optional<List<Object>> e;
+    private final Optional<WorldMap.b> f;
+
+    public PacketPlayOutMap(MapId b, byte c, boolean d, Optional<List<Object>> e, Optional<WorldMap.b> f) {
+        this.b = b;
+        this.c = c;
+        this.d = d;
+        this.e = e;
+        this.f = f;
+    }
+
+    public PacketPlayOutMap(MapId b, byte c, boolean d, Collection<Object> icons, WorldMap.b f) {
+        this(b, c, d, icons != null ? Optional.of(new ArrayList<>(icons)) : Optional.empty(), Optional.ofNullable(f));
+    }
+
+    public MapId mapId() {
+        return b;
+    }
+
+    public Optional<WorldMap.b> colorPatch() {
+        return f;
+    }
+
+    /**
+     * Get the approximate size of this packet on the wire, without compression
+     *
+     * @return The size in bytes
+     */
+    public int getSize() {
+        return HEADER_SIZE + f.map(patch -> patch.data().length).orElse(0);
+    }
+}
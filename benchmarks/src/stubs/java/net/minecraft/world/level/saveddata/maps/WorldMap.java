@@ -0,0 +1,55 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.minecraft.world.level.saveddata.maps;
+
+/**
+ * Stand-in for the saved map data, only the patch that map packets carry exists.
+ */
+public class WorldMap {
+    /**
+     * Stand-in for the patch of map colors in a map packet.
+     */
+    public static final class b {
+        private final int a;
+        private final int b;
+        private final int c;
+        private final int d;
+        private final byte[] e;
+
+        public b(int a, int b, int c, int d, byte[] e) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+            this.e = e;
+        }
+
+        public int width() {
+            return c;
+        }
+
+        public int height() {
+            return d;
+        }
+
+        public byte[] data() {
+            return e;
+        }
+    }
+}
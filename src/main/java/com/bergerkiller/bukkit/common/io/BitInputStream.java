@@ -22,11 +22,16 @@ import java.io.IOException;
 import java.io.InputStream;
 
 /**
- * Input Stream that can also read individual bits
+ * Input Stream that can also read individual bits.
+ * The underlying stream is read in large blocks, so more bytes than needed may be consumed from it.
  */
 public class BitInputStream extends InputStream {
-    private int bitbuff = 0;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private long bitbuff = 0;
     private int bitbuff_len = 0;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int buffer_pos = 0;
+    private int buffer_len = 0;
     private boolean closed = false;
     private final InputStream input;
     private final boolean closeInput;
@@ -56,7 +61,7 @@ public class BitInputStream extends InputStream {
         if (this.closed) {
             throw new IOException("Stream is closed");
         }
-        return this.input.available();
+        return (this.bitbuff_len >> 3) + (this.buffer_len - this.buffer_pos) + this.input.available();
     }
 
     @Override
@@ -67,7 +72,7 @@ public class BitInputStream extends InputStream {
     /**
      * Reads bits from the stream
      *
-     * @param nBits to read
+     * @param nBits to read, at most 32
      * @return read value, -1 when end of stream is reached
      * @throws IOException
      */
@@ -75,18 +80,33 @@ public class BitInputStream extends InputStream {
         if (this.closed) {
             throw new IOException("Stream is closed");
         }
-        while (this.bitbuff_len < nBits) {
-            int readByte = this.input.read();
-            if (readByte == -1) return -1;
-            this.bitbuff |= (readByte << this.bitbuff_len);
-            this.bitbuff_len += 8;
+        if (this.bitbuff_len < nBits) {
+            fillBits();
+            if (this.bitbuff_len < nBits) return -1;
         }
-        int result = bitbuff & ((1 << nBits) - 1);
-        this.bitbuff >>= nBits;
+        int result = (int) (this.bitbuff & ((1L << nBits) - 1));
+        this.bitbuff >>>= nBits;
         this.bitbuff_len -= nBits;
         return result;
     }
 
+    /**
+     * Fills the 64-bit bit buffer with as many whole bytes as fit, refilling the byte buffer when needed
+     */
+    private void fillBits() throws IOException {
+        while (this.bitbuff_len <= 56) {
+            if (this.buffer_pos == this.buffer_len) {
+                int read = this.input.read(this.buffer, 0, this.buffer.length);
+                if (read == -1) return;
+                this.buffer_pos = 0;
+                this.buffer_len = read;
+                continue;
+            }
+            this.bitbuff |= (this.buffer[this.buffer_pos++] & 0xFFL) << this.bitbuff_len;
+            this.bitbuff_len += 8;
+        }
+    }
+
     @Override
     public void close() throws IOException {
         if (!this.closed) {
@@ -19,13 +19,31 @@
 package com.bergerkiller.bukkit.common.map;
 
 import com.bergerkiller.bukkit.common.map.color.MCSDBubbleFormat;
-import com.bergerkiller.bukkit.common.map.color.MCSDGenBukkit;
+import com.bergerkiller.bukkit.common.map.color.MCSDGenOklab;
+import com.bergerkiller.bukkit.common.map.color.MapColorLookup;
 import com.bergerkiller.bukkit.common.map.color.MapColorSpaceData;
-import tech.sbdevelopment.mapreflectionapi.utils.ReflectionUtil;
+import com.bergerkiller.bukkit.common.map.color.WorkerAllocations;
+import org.bukkit.map.MapPalette;
+import tech.sbdevelopment.mapreflectionapi.api.metrics.jfr.PaletteLoadEvent;
 
 import java.awt.*;
-import java.io.InputStream;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.zip.CRC32;
 
 import static com.cryptomorin.xseries.reflection.XReflection.supports;
 
@@ -33,7 +51,11 @@ import static com.cryptomorin.xseries.reflection.XReflection.supports;
  * Additional functionality on top of Bukkit's MapPalette
  */
 public class MapColorPalette {
-    private static final MapColorSpaceData COLOR_MAP_DATA;
+    private static final Color[] COLORS = new Color[256];
+    private static final int[] COLORS_ARGB = new int[256];
+    private static IndexColorModel INDEX_COLOR_MODEL;
+    private static MapColorSpaceData COLOR_MAP_DATA;
+    private static MapColorLookup COLOR_LOOKUP;
     public static final byte[] COLOR_MAP_AVERAGE = new byte[0x10000];
     public static final byte[] COLOR_MAP_ADD = new byte[0x10000];
     public static final byte[] COLOR_MAP_SUBTRACT = new byte[0x10000];
@@ -42,46 +64,209 @@ public class MapColorPalette {
 
     public static final byte COLOR_TRANSPARENT = 0;
 
-    static {
-        // Now we know java.awt exists we can initialize this one
-        COLOR_MAP_DATA = new MapColorSpaceData();
+    private static final int CACHE_MAGIC = 0x4D524150; //MRAP
+    private static final int CACHE_VERSION = 1;
+    private static final AtomicBoolean LOADING = new AtomicBoolean();
+    private static final CompletableFuture<Void> LOADED = new CompletableFuture<>();
+    private static volatile boolean loaded = false;
+    private static volatile long loadAllocatedBytes = -1;
 
-        // Load color map data from the Bubble format file bundled with the library
-        {
-            boolean success = false;
-            MCSDBubbleFormat bubbleData = new MCSDBubbleFormat();
-            try {
-                String bub_path_postfix;
-                if (supports(17)) {
-                    bub_path_postfix = "map_1_17.bub";
-                } else if (supports(16)) {
-                    bub_path_postfix = "map_1_16.bub";
-                } else {
-                    bub_path_postfix = "map_1_12.bub";
-                }
-                String bub_path = "/tech/sbdevelopment/mapreflectionapi/libs/bkcommonlib/internal/resources/map/" + bub_path_postfix;
-                InputStream input = MapColorPalette.class.getResourceAsStream(bub_path);
+    /**
+     * Starts loading the palette on a background thread, using the full color lookup table.
+     *
+     * @param cacheFile file to cache the palette in, or null to not cache it
+     * @return future that completes when the palette is loaded
+     * @see #loadAsync(File, boolean, Function)
+     */
+    public static CompletableFuture<Void> loadAsync(File cacheFile) {
+        return loadAsync(cacheFile, false, data -> data);
+    }
+
+    /**
+     * Starts loading the palette on a background thread.
+     * The palette is read from the cache file if it is up-to-date, otherwise it is decoded
+     * from the bundled Bubble format file and stored in the cache file for the next start.
+     * When perceptual matching is enabled or the Bubble format file is missing, the table is generated
+     * by matching in the OKLab color space instead, see {@link MCSDGenOklab}.
+     * The full color lookup table is discarded when the lookup factory returns another lookup.
+     *
+     * @param cacheFile     file to cache the palette in, or null to not cache it
+     * @param perceptual    whether to generate the table using perceptual matching
+     * @param lookupFactory creates the color lookup from the full color lookup table
+     * @return future that completes when the palette is loaded
+     */
+    public static CompletableFuture<Void> loadAsync(File cacheFile, boolean perceptual, Function<MapColorSpaceData, MapColorLookup> lookupFactory) {
+        if (LOADING.compareAndSet(false, true)) {
+            Thread thread = new Thread(() -> load(cacheFile, perceptual, lookupFactory), "MapReflectionAPI Palette Loader");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return LOADED;
+    }
+
+    /**
+     * Gets whether the palette is loaded
+     *
+     * @return True if loaded
+     */
+    public static boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Gets the amount of bytes that were allocated while loading the palette,
+     * including the allocations of the worker threads that generate the color table in parallel
+     *
+     * @return allocated bytes, or -1 if not loaded or not measurable on this JVM
+     */
+    public static long getLoadAllocatedBytes() {
+        return loadAllocatedBytes;
+    }
+
+    /**
+     * Gets the approximate amount of memory used by the palette, its blend tables and the color lookup
+     *
+     * @return memory usage in bytes, or 0 if not loaded
+     */
+    public static long getMemoryUsage() {
+        if (!loaded) return 0;
+        long tables = COLOR_MAP_AVERAGE.length + COLOR_MAP_ADD.length + COLOR_MAP_SUBTRACT.length
+                + COLOR_MAP_MULTIPLY.length + COLOR_MAP_SPECULAR.length + COLORS_ARGB.length * 4L;
+        return tables + COLOR_LOOKUP.getMemoryUsage();
+    }
+
+    /**
+     * Gets the color lookup that is used to match rgb values to map color codes
+     *
+     * @return color lookup
+     */
+    public static MapColorLookup getColorLookup() {
+        awaitLoaded();
+        return COLOR_LOOKUP;
+    }
+
+    /**
+     * Waits until the palette is loaded. If loading was not started yet, the palette is loaded on this thread.
+     * This must be called before using the COLOR_MAP_* tables directly.
+     */
+    public static void awaitLoaded() {
+        if (loaded) return;
+
+        if (LOADING.compareAndSet(false, true)) {
+            load(null, false, data -> data);
+        }
+        LOADED.join();
+    }
+
+    private static void load(File cacheFile, boolean perceptual, Function<MapColorSpaceData, MapColorLookup> lookupFactory) {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocationBean = null;
+        if (threadBean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+            allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        }
+        long threadId = Thread.currentThread().getId();
+        long allocatedStart = allocationBean != null ? allocationBean.getThreadAllocatedBytes(threadId) : -1;
+        long workerAllocatedStart = WorkerAllocations.getAllocatedBytes();
+
+        try {
+            String bub_path_postfix;
+            if (supports(17)) {
+                bub_path_postfix = "map_1_17.bub";
+            } else if (supports(16)) {
+                bub_path_postfix = "map_1_16.bub";
+            } else {
+                bub_path_postfix = "map_1_12.bub";
+            }
+
+            // Read the Bubble format file bundled with the library, the checksum identifies the cache
+            PaletteLoadEvent event = new PaletteLoadEvent();
+            event.begin();
+            byte[] bubBytes = null;
+            long checksum = 0;
+            try (InputStream input = MapColorPalette.class.getResourceAsStream("/tech/sbdevelopment/mapreflectionapi/libs/bkcommonlib/internal/resources/map/" + bub_path_postfix)) {
                 if (input != null) {
-                    bubbleData.readFrom(input);
-                    success = true;
+                    bubBytes = readFully(input);
+                    CRC32 crc = new CRC32();
+                    crc.update(bubBytes);
+                    checksum = crc.getValue();
                 }
-            } catch (Exception e) {
+            } catch (IOException e) {
                 e.printStackTrace();
             }
+            event.complete("resource", bubBytes != null);
 
-            if (success) {
-                COLOR_MAP_DATA.readFrom(bubbleData);
-            } else {
-                MCSDGenBukkit bukkitGen = new MCSDGenBukkit();
-                bukkitGen.generate();
-                COLOR_MAP_DATA.readFrom(bukkitGen);
+            // The palette colors to match with, or null to use the Bubble format file as is
+            Color[] colors = null;
+            String cacheName = bub_path_postfix;
+            if (bubBytes == null) {
+                colors = getBukkitColors();
+                cacheName = "bukkit-oklab";
+                checksum = getChecksum(colors);
+            } else if (perceptual) {
+                colors = MCSDBubbleFormat.readColors(new ByteArrayInputStream(bubBytes));
+                cacheName = bub_path_postfix + "-oklab";
+            }
+
+            event = new PaletteLoadEvent();
+            event.begin();
+            boolean cached = cacheFile != null && readCache(cacheFile, cacheName, checksum);
+            event.complete("cache", cached);
+
+            if (!cached) {
+                event = new PaletteLoadEvent();
+                event.begin();
+                generate(bubBytes, colors);
+                event.complete("generate", true);
+
+                if (cacheFile != null) {
+                    event = new PaletteLoadEvent();
+                    event.begin();
+                    writeCache(cacheFile, cacheName, checksum);
+                    event.complete("write cache", true);
+                }
+            }
+
+            for (int i = 0; i < 256; i++) {
+                COLORS[i] = COLOR_MAP_DATA.getColor((byte) i);
+                COLORS_ARGB[i] = COLORS[i].getRGB();
+            }
+            INDEX_COLOR_MODEL = new IndexColorModel(8, 256, COLORS_ARGB, 0, true, -1, DataBuffer.TYPE_BYTE);
+
+            event = new PaletteLoadEvent();
+            event.begin();
+            COLOR_LOOKUP = lookupFactory.apply(COLOR_MAP_DATA);
+            event.complete("lookup", true);
+            COLOR_MAP_DATA = null;
+
+            if (allocationBean != null) {
+                // The parallel parts of the generation allocate on the worker threads of the common pool
+                loadAllocatedBytes = allocationBean.getThreadAllocatedBytes(threadId) - allocatedStart
+                        + WorkerAllocations.getAllocatedBytes() - workerAllocatedStart;
             }
+            loaded = true;
+            LOADED.complete(null);
+        } catch (Throwable t) {
+            LOADED.completeExceptionally(t);
+        }
+    }
+
+    private static void generate(byte[] bubBytes, Color[] colors) {
+        // Load color map data from the Bubble format file bundled with the library
+        if (colors != null || !readBubbleFormat(bubBytes)) {
+            // Match the palette colors in the OKLab color space, the generator is used as the color map data
+            MCSDGenOklab oklabGen = new MCSDGenOklab();
+            if (colors == null) colors = getBukkitColors();
+            for (int i = 0; i < 256; i++) {
+                oklabGen.setColor((byte) i, colors[i]);
+            }
+            oklabGen.generate();
+            COLOR_MAP_DATA = oklabGen;
         }
 
         // Generate 256 lightness values for all colors
         for (int a = 0; a < 256; a++) {
             int index = (a * 256);
-            Color color_a = getRealColor((byte) a);
+            Color color_a = COLOR_MAP_DATA.getColor((byte) a);
             if (color_a.getAlpha() < 128) {
                 // All specular colors for the transparent color are transparent
                 Arrays.fill(COLOR_MAP_SPECULAR, index, index + 256, COLOR_TRANSPARENT);
@@ -94,7 +279,7 @@ public class MapColorPalette {
                     int sr = (int) (color_a.getRed() * f);
                     int sg = (int) (color_a.getGreen() * f);
                     int sb = (int) (color_a.getBlue() * f);
-                    COLOR_MAP_SPECULAR[index++] = getColor(sr, sg, sb);
+                    COLOR_MAP_SPECULAR[index++] = getColorUnchecked(COLOR_MAP_DATA, sr, sg, sb);
                 }
             }
         }
@@ -107,13 +292,129 @@ public class MapColorPalette {
         }
     }
 
+    private static boolean readBubbleFormat(byte[] bubBytes) {
+        // The decoded bubble format (16 MiB) is only reachable inside this method,
+        // so it can be collected as soon as the color map data is populated
+        MCSDBubbleFormat bubbleData = new MCSDBubbleFormat();
+        try {
+            bubbleData.readFrom(new ByteArrayInputStream(bubBytes));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+        COLOR_MAP_DATA = new MapColorSpaceData();
+        COLOR_MAP_DATA.readFrom(bubbleData);
+        return true;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Color[] getBukkitColors() {
+        Color[] colors = new Color[256];
+        Arrays.fill(colors, new Color(0, 0, 0, 0));
+        for (int i = 0; i < 256; i++) {
+            try {
+                Color color = MapPalette.getColor((byte) i);
+                if (color != null) colors[i] = color;
+            } catch (Exception ignored) {
+            }
+        }
+        return colors;
+    }
+
+    private static long getChecksum(Color[] colors) {
+        CRC32 crc = new CRC32();
+        for (Color color : colors) {
+            int argb = color.getRGB();
+            crc.update(argb >>> 24);
+            crc.update(argb >>> 16);
+            crc.update(argb >>> 8);
+            crc.update(argb);
+        }
+        return crc.getValue();
+    }
+
+    private static boolean readCache(File cacheFile, String name, long checksum) {
+        if (!cacheFile.isFile()) return false;
+
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 16 || buffer.getInt() != CACHE_MAGIC || buffer.getInt() != CACHE_VERSION) return false;
+
+            byte[] nameBytes = new byte[buffer.getInt()];
+            if (nameBytes.length > buffer.remaining()) return false;
+            buffer.get(nameBytes);
+            if (!name.equals(new String(nameBytes, StandardCharsets.UTF_8)) || buffer.getLong() != checksum) return false;
+            if (buffer.remaining() != getCachePayloadSize()) return false;
+
+            COLOR_MAP_DATA = new MapColorSpaceData();
+            COLOR_MAP_DATA.readFrom(buffer);
+            buffer.get(COLOR_MAP_AVERAGE);
+            buffer.get(COLOR_MAP_ADD);
+            buffer.get(COLOR_MAP_SUBTRACT);
+            buffer.get(COLOR_MAP_MULTIPLY);
+            buffer.get(COLOR_MAP_SPECULAR);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static void writeCache(File cacheFile, String name, long checksum) {
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        try {
+            File folder = cacheFile.getAbsoluteFile().getParentFile();
+            if (folder != null && !folder.exists()) folder.mkdirs();
+
+            try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer header = ByteBuffer.allocate(20 + nameBytes.length);
+                header.putInt(CACHE_MAGIC).putInt(CACHE_VERSION).putInt(nameBytes.length).put(nameBytes).putLong(checksum);
+                header.flip();
+                writeFully(channel, header);
+
+                COLOR_MAP_DATA.writeTo(channel);
+                writeFully(channel, ByteBuffer.wrap(COLOR_MAP_AVERAGE));
+                writeFully(channel, ByteBuffer.wrap(COLOR_MAP_ADD));
+                writeFully(channel, ByteBuffer.wrap(COLOR_MAP_SUBTRACT));
+                writeFully(channel, ByteBuffer.wrap(COLOR_MAP_MULTIPLY));
+                writeFully(channel, ByteBuffer.wrap(COLOR_MAP_SPECULAR));
+            }
+
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            tempFile.delete();
+        }
+    }
+
+    private static int getCachePayloadSize() {
+        return MapColorSpaceData.getSerializedSize() + 5 * 0x10000;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
     private static void initTable(byte color1, byte color2) {
         int index = getMapIndex(color1, color2);
         if (isTransparent(color1) || isTransparent(color2)) {
             initTransparent(index, color2);
         } else {
-            Color c1 = getRealColor(color1);
-            Color c2 = getRealColor(color2);
+            Color c1 = COLOR_MAP_DATA.getColor(color1);
+            Color c2 = COLOR_MAP_DATA.getColor(color2);
             initColor(
                     index,
                     c1.getRed(), c1.getGreen(), c1.getBlue(),
@@ -143,7 +444,7 @@ public class MapColorPalette {
         if (g > 0xFF) g = 0xFF;
         if (b < 0x00) b = 0x00;
         if (b > 0xFF) b = 0xFF;
-        array[index] = getColor(r, g, b);
+        array[index] = COLOR_MAP_DATA.get(r, g, b);
     }
 
     /**
@@ -164,10 +465,12 @@ public class MapColorPalette {
      * @return minecraft color
      */
     public static byte getColor(Color color) {
+        if (!loaded) awaitLoaded();
+
         if ((color.getAlpha() & 0x80) == 0) {
             return COLOR_TRANSPARENT;
         } else {
-            return COLOR_MAP_DATA.get(color.getRed(), color.getGreen(), color.getBlue());
+            return COLOR_LOOKUP.get(color.getRed(), color.getGreen(), color.getBlue());
         }
     }
 
@@ -180,6 +483,11 @@ public class MapColorPalette {
      * @return minecraft color
      */
     public static byte getColor(int r, int g, int b) {
+        if (!loaded) awaitLoaded();
+        return getColorUnchecked(COLOR_LOOKUP, r, g, b);
+    }
+
+    private static byte getColorUnchecked(MapColorLookup lookup, int r, int g, int b) {
         // This helps prevent dumb exceptions.
         // Nobody likes random exceptions when all you're doing is color calculations
         if (r < 0)
@@ -195,7 +503,7 @@ public class MapColorPalette {
         else if (b > 255)
             b = 255;
 
-        return COLOR_MAP_DATA.get(r, g, b);
+        return lookup.get(r, g, b);
     }
 
     /**
@@ -216,6 +524,38 @@ public class MapColorPalette {
      * @return real RGB color
      */
     public static Color getRealColor(byte color) {
-        return COLOR_MAP_DATA.getColor(color);
+        if (!loaded) awaitLoaded();
+        return COLORS[color & 0xFF];
+    }
+
+    /**
+     * Gets the real ARGB color belonging to a color code
+     *
+     * @param color code input
+     * @return real ARGB color
+     */
+    public static int getRealColorARGB(byte color) {
+        if (!loaded) awaitLoaded();
+        return COLORS_ARGB[color & 0xFF];
+    }
+
+    /**
+     * Gets the real ARGB colors of all 256 color codes
+     *
+     * @return copy of the ARGB palette, indexed by color code
+     */
+    public static int[] getARGBPalette() {
+        if (!loaded) awaitLoaded();
+        return COLORS_ARGB.clone();
+    }
+
+    /**
+     * Gets an 8-bit color model of the map palette, to create images that use the color codes as pixels
+     *
+     * @return index color model
+     */
+    public static IndexColorModel getIndexColorModel() {
+        if (!loaded) awaitLoaded();
+        return INDEX_COLOR_MODEL;
     }
 }
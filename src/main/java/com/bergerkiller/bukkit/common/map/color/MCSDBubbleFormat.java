@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
 import java.util.zip.InflaterInputStream;
 
 /**
@@ -36,10 +37,44 @@ import java.util.zip.InflaterInputStream;
  * are then filled with colors to reproduce the original image.
  */
 public class MCSDBubbleFormat extends MapColorSpaceData {
-    public final boolean[][] strands = new boolean[256][256 * 256];
+    private static final int LAYERS_PER_SLAB = 8;
+    public final long[][] strands = new long[256][(256 * 256) >> 6];
     public final List<Bubble> bubbles = new ArrayList<>();
 
+    /**
+     * Reads only the palette colors from a stream in the bubble format
+     *
+     * @param stream to read from
+     * @return the 256 palette colors
+     * @throws IOException if reading fails
+     */
+    public static Color[] readColors(InputStream stream) throws IOException {
+        Color[] colors = new Color[256];
+        try (BitInputStream bitStream = new BitInputStream(new InflaterInputStream(stream))) {
+            for (int i = 0; i < 256; i++) {
+                int r = bitStream.read();
+                int g = bitStream.read();
+                int b = bitStream.read();
+                int a = bitStream.read();
+                colors[i] = new Color(r, g, b, a);
+            }
+        }
+        return colors;
+    }
+
     public void readFrom(InputStream stream) throws IOException {
+        readFrom(stream, true);
+    }
+
+    /**
+     * Reads the color space data from a stream in the bubble format
+     *
+     * @param stream   to read from
+     * @param parallel whether to spread the colors over slabs of layers in parallel,
+     *                 the sequential way is kept as reference and gives the same result
+     * @throws IOException if reading fails
+     */
+    void readFrom(InputStream stream, boolean parallel) throws IOException {
         try (BitInputStream bitStream = new BitInputStream(new InflaterInputStream(stream))) {
             // Read all color RGB values
             for (int i = 0; i < 256; i++) {
@@ -67,13 +102,13 @@ public class MCSDBubbleFormat extends MapColorSpaceData {
             // Read bubble boundary information from the stream
             MCSDWebbingCodec codec = new MCSDWebbingCodec();
             for (int z = 0; z < 256; z++) {
-                Arrays.fill(this.strands[z], false);
+                Arrays.fill(this.strands[z], 0L);
                 codec.reset(strands[z], false);
                 while (codec.readNext(bitStream)) ;
             }
 
             // Initialize the colors with the bubble colors
-            this.initColors();
+            this.initColors(parallel);
 
             // Read color correction data for pixels unset (value = 0)
             for (int i = 0; i < (1 << 24); i++) {
@@ -97,7 +132,7 @@ public class MCSDBubbleFormat extends MapColorSpaceData {
         }
     }
 
-    private void initColors() {
+    private void initColors(boolean parallel) {
         // Set initial cell colors
         this.clearRGBData();
         for (MCSDBubbleFormat.Bubble cell : bubbles) {
@@ -105,29 +140,58 @@ public class MCSDBubbleFormat extends MapColorSpaceData {
                 this.set(cell.x, cell.y, z, cell.color);
             }
         }
-        spreadColors();
+        if (parallel) {
+            spreadColorsParallel();
+        } else {
+            spreadColorsSequential();
+        }
     }
 
-    private void spreadColors() {
-        // As we'll be processing pretty much every element, allocate the full space (60MB)
-        // The range of the buffer we process shrinks as we spread
-        StrandBuffer buf;
-        {
-            final int[] buffer = new int[1 << 24];
-            int count = -1;
-            for (int z = 0; z < 256; z++) {
-                boolean[] layerStrands = this.strands[z];
-                int indexOffset = z << 16;
-                for (int i = 0; i < (1 << 16); i++) {
-                    if (!layerStrands[i]) {
-                        buffer[++count] = indexOffset + i;
-                    }
-                }
+    /**
+     * Gets whether a strand is set in a bit-packed layer of strands
+     *
+     * @param layerStrands layer of strands
+     * @param index        index in the layer (x | y << 8)
+     * @return True if the strand is set
+     */
+    public static boolean isStrand(long[] layerStrands, int index) {
+        return (layerStrands[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private void spreadColorsSequential() {
+        // Colors only spread within a z-layer, so the layers are processed one by one
+        // This only needs a buffer for the 65536 indices of one layer, instead of all 16M
+        final int[] buffer = new int[1 << 16];
+        for (int z = 0; z < 256; z++) {
+            spreadLayer(z, buffer);
+        }
+    }
+
+    private void spreadColorsParallel() {
+        // Colors only spread within a z-layer, so slabs of layers can be processed in parallel
+        // Every slab writes to its own part of the data, so the result is the same as processing them in order
+        IntStream.range(0, 256 / LAYERS_PER_SLAB).parallel().forEach(WorkerAllocations.counted(slab -> {
+            final int[] buffer = new int[1 << 16];
+            for (int z = slab * LAYERS_PER_SLAB; z < (slab + 1) * LAYERS_PER_SLAB; z++) {
+                spreadLayer(z, buffer);
+            }
+        }));
+    }
+
+    private void spreadLayer(int z, int[] buffer) {
+        long[] layerStrands = this.strands[z];
+        int indexOffset = z << 16;
+        int count = -1;
+        for (int i = 0; i < (1 << 16); i++) {
+            if (!isStrand(layerStrands, i)) {
+                buffer[++count] = indexOffset + i;
             }
-            count++;
-            buf = new StrandBuffer(buffer, count);
         }
+        count++;
+        spreadColors(new StrandBuffer(buffer, count));
+    }
 
+    private void spreadColors(StrandBuffer buf) {
         // Process all until no more changes remain
         buf.process(index -> {
             byte color;
@@ -230,7 +294,7 @@ public class MCSDBubbleFormat extends MapColorSpaceData {
         } else if (o instanceof MCSDBubbleFormat) {
             MCSDBubbleFormat other = (MCSDBubbleFormat) o;
             for (int i = 0; i < strands.length; i++) {
-                if (other.strands[i] != this.strands[i]) {
+                if (!Arrays.equals(other.strands[i], this.strands[i])) {
                     return false;
                 }
             }
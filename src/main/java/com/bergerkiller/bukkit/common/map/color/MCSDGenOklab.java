@@ -0,0 +1,184 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.bergerkiller.bukkit.common.map.color;
+
+import java.awt.*;
+import java.util.stream.IntStream;
+
+/**
+ * Generates the color map information by matching every rgb value to the palette color
+ * that is closest in the perceptual OKLab color space. This is a lot faster and looks better
+ * than matching using Bukkit's rgb distance, see {@link MCSDGenBukkit}.
+ */
+public class MCSDGenOklab extends MapColorSpaceData {
+    private static final int BLOCK_BITS = 3;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+    private static final float[][] LMS_TO_LAB = {
+            {0.2104542553f, 0.7936177850f, -0.0040720468f},
+            {1.9779984951f, -2.4285922050f, 0.4505937099f},
+            {0.0259040371f, 0.7827717662f, -0.8086757660f}
+    };
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double c = i / 255.0;
+            SRGB_TO_LINEAR[i] = (float) (c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4));
+        }
+    }
+
+    /**
+     * Generates the color map information for the palette colors that are set.
+     * <p>
+     * The rgb cube is split in blocks of 8x8x8 values. The cube root of the LMS values only increases
+     * with r, g and b, so the OKLab values of a block lie in a box that follows from its corners.
+     * Only palette colors that can be the closest to some point in that box are compared for the
+     * values in the block. Blocks are matched in parallel, every block only writes its own values.
+     */
+    public void generate() {
+        // Convert all opaque palette colors to OKLab
+        int count = 0;
+        byte[] codes = new byte[256];
+        float[] lab = new float[256 * 3];
+        float[] tmp = new float[3];
+        for (int code = 0; code < 256; code++) {
+            Color color = getColor((byte) code);
+            if (color != null && color.getAlpha() >= 128) {
+                toOklab(color.getRed(), color.getGreen(), color.getBlue(), tmp);
+                System.arraycopy(tmp, 0, lab, count * 3, 3);
+                codes[count++] = (byte) code;
+            }
+        }
+        if (count == 0) {
+            clearRGBData();
+            return;
+        }
+
+        final int paletteSize = count;
+        final int blocks = 256 >> BLOCK_BITS;
+        IntStream.range(0, blocks * blocks).parallel().forEach(WorkerAllocations.counted(blockGB -> {
+            int[] candidates = new int[paletteSize];
+            float[] lmsMin = new float[3], lmsMax = new float[3];
+            float[] boxMin = new float[3], boxMax = new float[3];
+            float[] target = new float[3];
+
+            int g0 = (blockGB % blocks) << BLOCK_BITS;
+            int b0 = (blockGB / blocks) << BLOCK_BITS;
+            for (int r0 = 0; r0 < 256; r0 += BLOCK_SIZE) {
+                // Bounding box of the block in OKLab
+                toLms(r0, g0, b0, lmsMin);
+                toLms(r0 + BLOCK_SIZE - 1, g0 + BLOCK_SIZE - 1, b0 + BLOCK_SIZE - 1, lmsMax);
+                for (int axis = 0; axis < 3; axis++) {
+                    float min = 0, max = 0;
+                    for (int i = 0; i < 3; i++) {
+                        float coefficient = LMS_TO_LAB[axis][i];
+                        min += coefficient * (coefficient >= 0 ? lmsMin[i] : lmsMax[i]);
+                        max += coefficient * (coefficient >= 0 ? lmsMax[i] : lmsMin[i]);
+                    }
+                    boxMin[axis] = min;
+                    boxMax[axis] = max;
+                }
+
+                // Any palette color closer than the farthest distance of the closest color is a candidate
+                float threshold = Float.MAX_VALUE;
+                for (int i = 0; i < paletteSize; i++) {
+                    threshold = Math.min(threshold, boxDistance(lab, i, boxMin, boxMax, true));
+                }
+                threshold = threshold * 1.0001f + 1e-6f;
+                int candidateCount = 0;
+                for (int i = 0; i < paletteSize; i++) {
+                    if (boxDistance(lab, i, boxMin, boxMax, false) <= threshold) {
+                        candidates[candidateCount++] = i;
+                    }
+                }
+
+                // Match every value of the block to the closest candidate
+                for (int b = b0; b < b0 + BLOCK_SIZE; b++) {
+                    for (int g = g0; g < g0 + BLOCK_SIZE; g++) {
+                        for (int r = r0; r < r0 + BLOCK_SIZE; r++) {
+                            toOklab(r, g, b, target);
+                            int best = candidates[0];
+                            float bestDistance = distance(target, lab, best);
+                            for (int c = 1; c < candidateCount; c++) {
+                                int candidate = candidates[c];
+                                float distance = distance(target, lab, candidate);
+                                if (distance < bestDistance) {
+                                    best = candidate;
+                                    bestDistance = distance;
+                                }
+                            }
+                            set(r, g, b, codes[best]);
+                        }
+                    }
+                }
+            }
+        }));
+    }
+
+    private static float distance(float[] target, float[] lab, int index) {
+        float dl = target[0] - lab[index * 3];
+        float da = target[1] - lab[index * 3 + 1];
+        float db = target[2] - lab[index * 3 + 2];
+        return dl * dl + da * da + db * db;
+    }
+
+    private static float boxDistance(float[] lab, int index, float[] boxMin, float[] boxMax, boolean farthest) {
+        float distance = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            float value = lab[index * 3 + axis];
+            float d;
+            if (farthest) {
+                d = Math.max(Math.abs(value - boxMin[axis]), Math.abs(value - boxMax[axis]));
+            } else {
+                d = value < boxMin[axis] ? boxMin[axis] - value : (value > boxMax[axis] ? value - boxMax[axis] : 0);
+            }
+            distance += d * d;
+        }
+        return distance;
+    }
+
+    private static void toLms(int r, int g, int b, float[] result) {
+        float lr = SRGB_TO_LINEAR[r & 0xFF];
+        float lg = SRGB_TO_LINEAR[g & 0xFF];
+        float lb = SRGB_TO_LINEAR[b & 0xFF];
+
+        result[0] = (float) Math.cbrt(0.4122214708f * lr + 0.5363325363f * lg + 0.0514459929f * lb);
+        result[1] = (float) Math.cbrt(0.2119034982f * lr + 0.6806995451f * lg + 0.1073969566f * lb);
+        result[2] = (float) Math.cbrt(0.0883024619f * lr + 0.2817188376f * lg + 0.6299787005f * lb);
+    }
+
+    /**
+     * Converts an sRGB color to OKLab
+     *
+     * @param r      component
+     * @param g      component
+     * @param b      component
+     * @param result array to store L, a and b in
+     * @return result
+     */
+    public static float[] toOklab(int r, int g, int b, float[] result) {
+        toLms(r, g, b, result);
+        float l = result[0], m = result[1], s = result[2];
+        for (int axis = 0; axis < 3; axis++) {
+            float[] coefficients = LMS_TO_LAB[axis];
+            result[axis] = coefficients[0] * l + coefficients[1] * m + coefficients[2] * s;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.bergerkiller.bukkit.common.map.color;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Color lookup that searches the nearest opaque palette color (squared rgb distance) in a k-d tree.
+ * This uses almost no memory, but is slower than a table and does not reproduce
+ * the corrections of the bundled color map data exactly.
+ */
+public class MCSDKdTreeLookup implements MapColorLookup {
+    private final int[] nodeRGB;
+    private final byte[] nodeCodes;
+
+    /**
+     * Builds the k-d tree from the palette colors of the full table
+     *
+     * @param source the full table, only the palette colors are used
+     */
+    public MCSDKdTreeLookup(MapColorSpaceData source) {
+        List<Integer> codes = new ArrayList<>();
+        for (int code = 0; code < 256; code++) {
+            Color color = source.getColor((byte) code);
+            if (color != null && color.getAlpha() >= 128) {
+                codes.add(code);
+            }
+        }
+
+        this.nodeRGB = new int[codes.size()];
+        this.nodeCodes = new byte[codes.size()];
+        int[] rgb = new int[256];
+        for (int code : codes) {
+            rgb[code] = source.getColor((byte) code).getRGB() & 0xFFFFFF;
+        }
+        build(codes, rgb, 0, codes.size(), 0);
+    }
+
+    /**
+     * Stores the median of the range at the middle index, with the lower half left and the upper half right of it
+     */
+    private void build(List<Integer> codes, int[] rgb, int from, int to, int depth) {
+        if (from >= to) return;
+
+        int shift = getShift(depth);
+        List<Integer> range = codes.subList(from, to);
+        range.sort(Comparator.<Integer>comparingInt(code -> (rgb[code] >> shift) & 0xFF).thenComparingInt(code -> code));
+        int mid = (from + to) >>> 1;
+        this.nodeRGB[mid] = rgb[codes.get(mid)];
+        this.nodeCodes[mid] = (byte) (int) codes.get(mid);
+
+        build(codes, rgb, from, mid, depth + 1);
+        build(codes, rgb, mid + 1, to, depth + 1);
+    }
+
+    private static int getShift(int depth) {
+        // Splits on red, green, blue in turn
+        return 16 - 8 * (depth % 3);
+    }
+
+    @Override
+    public byte get(int r, int g, int b) {
+        if (this.nodeRGB.length == 0) return 0;
+
+        int[] best = {Integer.MAX_VALUE, 0};
+        search(r, g, b, 0, this.nodeRGB.length, 0, best);
+        return this.nodeCodes[best[1]];
+    }
+
+    private void search(int r, int g, int b, int from, int to, int depth, int[] best) {
+        if (from >= to) return;
+
+        int mid = (from + to) >>> 1;
+        int node = this.nodeRGB[mid];
+        int dr = r - ((node >> 16) & 0xFF);
+        int dg = g - ((node >> 8) & 0xFF);
+        int db = b - (node & 0xFF);
+        int distance = dr * dr + dg * dg + db * db;
+        if (distance < best[0] || (distance == best[0] && (this.nodeCodes[mid] & 0xFF) < (this.nodeCodes[best[1]] & 0xFF))) {
+            best[0] = distance;
+            best[1] = mid;
+        }
+
+        int shift = getShift(depth);
+        int split = ((r << 16 | g << 8 | b) >> shift & 0xFF) - ((node >> shift) & 0xFF);
+        if (split < 0) {
+            search(r, g, b, from, mid, depth + 1, best);
+            if (split * split <= best[0]) search(r, g, b, mid + 1, to, depth + 1, best);
+        } else {
+            search(r, g, b, mid + 1, to, depth + 1, best);
+            if (split * split <= best[0]) search(r, g, b, from, mid, depth + 1, best);
+        }
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return this.nodeRGB.length * 5L;
+    }
+}
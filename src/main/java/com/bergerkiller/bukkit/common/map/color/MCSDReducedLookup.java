@@ -0,0 +1,121 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.bergerkiller.bukkit.common.map.color;
+
+/**
+ * Color lookup that stores one color code for every cell of 2^(8 - bits) values per channel.
+ * The code of the center of the cell is used. When refining, cells that contain more than one
+ * color code in the full table also store all of their codes, which makes the lookup exact.
+ * With 6 bits that takes about 5 MiB instead of 16 MiB.
+ */
+public class MCSDReducedLookup implements MapColorLookup {
+    private final int bits;
+    private final int shift;
+    private final int mask;
+    private final byte[] cells;
+    private final int[] refineOffsets;
+    private final byte[] refineData;
+
+    /**
+     * Builds the reduced lookup from the full table
+     *
+     * @param source the full table
+     * @param bits   bits per channel (1 - 8)
+     * @param refine whether to store the exact codes of cells with more than one code
+     */
+    public MCSDReducedLookup(MapColorSpaceData source, int bits, boolean refine) {
+        if (bits < 1 || bits > 8) {
+            throw new IllegalArgumentException("Bits per channel must be between 1 and 8");
+        }
+        this.bits = bits;
+        this.shift = 8 - bits;
+        this.mask = (1 << this.shift) - 1;
+
+        int cellCount = 1 << (3 * bits);
+        int cellSize = 1 << (3 * this.shift);
+        int half = (1 << this.shift) >> 1;
+        this.cells = new byte[cellCount];
+        this.refineOffsets = refine && this.shift > 0 ? new int[cellCount] : null;
+
+        // First pass: store the center code, and count the cells that need refining
+        int mixedCount = 0;
+        for (int cell = 0; cell < cellCount; cell++) {
+            int r = getCellComponent(cell, 0), g = getCellComponent(cell, 1), b = getCellComponent(cell, 2);
+            this.cells[cell] = source.get(r + half, g + half, b + half);
+            if (this.refineOffsets != null && !isUniform(source, r, g, b)) {
+                this.refineOffsets[cell] = 1 + (mixedCount++) * cellSize;
+            }
+        }
+
+        // Second pass: store all codes of the mixed cells
+        if (this.refineOffsets != null) {
+            this.refineData = new byte[mixedCount * cellSize];
+            for (int cell = 0; cell < cellCount; cell++) {
+                int offset = this.refineOffsets[cell] - 1;
+                if (offset < 0) continue;
+
+                int r = getCellComponent(cell, 0), g = getCellComponent(cell, 1), b = getCellComponent(cell, 2);
+                for (int i = 0; i < cellSize; i++) {
+                    this.refineData[offset + i] = source.get(r + (i & this.mask), g + ((i >> this.shift) & this.mask), b + (i >> (2 * this.shift)));
+                }
+            }
+        } else {
+            this.refineData = null;
+        }
+    }
+
+    private int getCellComponent(int cell, int channel) {
+        return ((cell >> (channel * this.bits)) & ((1 << this.bits) - 1)) << this.shift;
+    }
+
+    private boolean isUniform(MapColorSpaceData source, int r, int g, int b) {
+        byte code = source.get(r, g, b);
+        for (int dr = 0; dr <= this.mask; dr++) {
+            for (int dg = 0; dg <= this.mask; dg++) {
+                for (int db = 0; db <= this.mask; db++) {
+                    if (source.get(r + dr, g + dg, b + db) != code) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public byte get(int r, int g, int b) {
+        int cell = (r >> this.shift) | ((g >> this.shift) << this.bits) | ((b >> this.shift) << (2 * this.bits));
+        if (this.refineOffsets != null) {
+            int offset = this.refineOffsets[cell];
+            if (offset != 0) {
+                return this.refineData[offset - 1 + ((r & this.mask) | ((g & this.mask) << this.shift) | ((b & this.mask) << (2 * this.shift)))];
+            }
+        }
+        return this.cells[cell];
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        long usage = this.cells.length;
+        if (this.refineOffsets != null) {
+            usage += this.refineOffsets.length * 4L + this.refineData.length;
+        }
+        return usage;
+    }
+}
@@ -24,7 +24,7 @@ import com.bergerkiller.bukkit.common.io.BitPacket;
 import java.io.IOException;
 
 /**
- * Encodes or decodes a 256x256 grid of booleans by walking down the connected lines and encoding them
+ * Encodes or decodes a 256x256 grid of booleans, stored as a bitset of 1024 longs, by walking down the connected lines and encoding them
  * using drawing instructions. For example, a diagonal line in the grid may be encoded as follows:
  * <ul>
  * <li>SET_POSITION(23, 56)</li>
@@ -55,7 +55,7 @@ import java.io.IOException;
 public class MCSDWebbingCodec {
     private int last_x, last_y;
     private int last_dx, last_dy;
-    public boolean[] strands = new boolean[1 << 16];
+    public long[] strands = new long[(1 << 16) >> 6];
     private final BitPacket[] packets = new BitPacket[1024];
 
     public MCSDWebbingCodec() {
@@ -64,7 +64,7 @@ public class MCSDWebbingCodec {
         }
     }
 
-    public void reset(boolean[] cells, boolean copyCells) {
+    public void reset(long[] cells, boolean copyCells) {
         if (copyCells) {
             System.arraycopy(cells, 0, this.strands, 0, cells.length);
         } else {
@@ -100,7 +100,7 @@ public class MCSDWebbingCodec {
                     // Reset position
                     last_x = stream.readBits(8);
                     last_y = stream.readBits(8);
-                    strands[last_x | (last_y << 8)] = true;
+                    setStrand(last_x | (last_y << 8));
                 }
             }
         } else {
@@ -116,8 +116,12 @@ public class MCSDWebbingCodec {
                 // End of stream
                 return false;
             }
-            strands[last_x | (last_y << 8)] = true;
+            setStrand(last_x | (last_y << 8));
         }
         return true;
     }
+
+    private void setStrand(int index) {
+        strands[index >>> 6] |= (1L << index);
+    }
 }
@@ -0,0 +1,62 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.bergerkiller.bukkit.common.map.color;
+
+/**
+ * Looks up the map color code for an rgb value.
+ * The full {@link MapColorSpaceData} table is the reference, other implementations
+ * trade accuracy or lookup speed for a lower memory usage.
+ */
+public interface MapColorLookup {
+
+    /**
+     * Gets the map color code value for an rgb value
+     *
+     * @param r component (0 - 255)
+     * @param g component (0 - 255)
+     * @param b component (0 - 255)
+     * @return color code
+     */
+    byte get(int r, int g, int b);
+
+    /**
+     * Gets the approximate amount of memory used by this lookup
+     *
+     * @return memory usage in bytes
+     */
+    long getMemoryUsage();
+
+    /**
+     * The available lookup implementations
+     */
+    enum Type {
+        /**
+         * The full 16 MiB table, see {@link MapColorSpaceData}
+         */
+        FULL,
+        /**
+         * A table with less bits per channel, see {@link MCSDReducedLookup}
+         */
+        REDUCED,
+        /**
+         * A nearest neighbour search over the palette colors, see {@link MCSDKdTreeLookup}
+         */
+        KD_TREE
+    }
+}
@@ -19,12 +19,15 @@
 package com.bergerkiller.bukkit.common.map.color;
 
 import java.awt.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 
 /**
  * Stores the raw map color space data, enabling transformation between different storage methods.
  */
-public class MapColorSpaceData implements Cloneable {
+public class MapColorSpaceData implements Cloneable, MapColorLookup {
     private final Color[] colors = new Color[256];
     private final byte[] data = new byte[1 << 24];
 
@@ -57,6 +60,49 @@ public class MapColorSpaceData implements Cloneable {
         System.arraycopy(data.colors, 0, this.colors, 0, this.colors.length);
     }
 
+    /**
+     * Sets all color data of this color space data to that from a buffer written by {@link #writeTo(WritableByteChannel)}
+     *
+     * @param buffer to read from
+     */
+    public void readFrom(ByteBuffer buffer) {
+        for (int i = 0; i < this.colors.length; i++) {
+            this.colors[i] = new Color(buffer.getInt(), true);
+        }
+        buffer.get(this.data);
+    }
+
+    /**
+     * Writes all color data of this color space data to a channel
+     *
+     * @param channel to write to
+     * @throws IOException if writing fails
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer colorBuffer = ByteBuffer.allocate(this.colors.length * 4);
+        for (Color color : this.colors) {
+            colorBuffer.putInt(color.getRGB());
+        }
+        colorBuffer.flip();
+        while (colorBuffer.hasRemaining()) {
+            channel.write(colorBuffer);
+        }
+
+        ByteBuffer dataBuffer = ByteBuffer.wrap(this.data);
+        while (dataBuffer.hasRemaining()) {
+            channel.write(dataBuffer);
+        }
+    }
+
+    /**
+     * Gets the amount of bytes written by {@link #writeTo(WritableByteChannel)}
+     *
+     * @return serialized size
+     */
+    public static int getSerializedSize() {
+        return 256 * 4 + (1 << 24);
+    }
+
     /**
      * Sets a single map palette color
      *
@@ -121,6 +167,11 @@ public class MapColorSpaceData implements Cloneable {
         return this.data[index];
     }
 
+    @Override
+    public long getMemoryUsage() {
+        return this.data.length;
+    }
+
     @Override
     public MapColorSpaceData clone() {
         MapColorSpaceData clone = new MapColorSpaceData();
@@ -0,0 +1,82 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.bergerkiller.bukkit.common.map.color;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * Counts the memory allocated by the worker threads of parallel streams.
+ * The thread that starts a stream measures its own allocations, so only the
+ * work done on other threads is counted here.
+ */
+public final class WorkerAllocations {
+    private static final com.sun.management.ThreadMXBean ALLOCATION_BEAN;
+    private static final LongAdder ALLOCATED = new LongAdder();
+
+    static {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+            ALLOCATION_BEAN = (com.sun.management.ThreadMXBean) threadBean;
+        } else {
+            ALLOCATION_BEAN = null;
+        }
+    }
+
+    private WorkerAllocations() {
+    }
+
+    /**
+     * Wraps a task of a parallel stream, so the memory it allocates on other threads is counted
+     *
+     * @param task task to wrap, must be created on the thread that starts the stream
+     * @return the wrapped task
+     */
+    public static IntConsumer counted(IntConsumer task) {
+        if (ALLOCATION_BEAN == null) return task;
+
+        final Thread caller = Thread.currentThread();
+        return value -> {
+            Thread thread = Thread.currentThread();
+            if (thread == caller) {
+                // Already measured by the thread itself
+                task.accept(value);
+                return;
+            }
+
+            long start = ALLOCATION_BEAN.getThreadAllocatedBytes(thread.getId());
+            try {
+                task.accept(value);
+            } finally {
+                ALLOCATED.add(ALLOCATION_BEAN.getThreadAllocatedBytes(thread.getId()) - start);
+            }
+        };
+    }
+
+    /**
+     * Gets the total amount of bytes allocated by counted tasks on worker threads
+     *
+     * @return allocated bytes
+     */
+    public static long getAllocatedBytes() {
+        return ALLOCATED.sum();
+    }
+}
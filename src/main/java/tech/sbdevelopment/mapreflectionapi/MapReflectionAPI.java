@@ -19,6 +19,10 @@
 package tech.sbdevelopment.mapreflectionapi;
 
 import com.bergerkiller.bukkit.common.map.MapColorPalette;
+import com.bergerkiller.bukkit.common.map.color.MCSDKdTreeLookup;
+import com.bergerkiller.bukkit.common.map.color.MCSDReducedLookup;
+import com.bergerkiller.bukkit.common.map.color.MapColorLookup;
+import com.bergerkiller.bukkit.common.map.color.MapColorSpaceData;
 import org.bstats.bukkit.Metrics;
 import org.bstats.charts.SingleLineChart;
 import org.bukkit.Bukkit;
@@ -32,6 +36,7 @@ import tech.sbdevelopment.mapreflectionapi.managers.Configuration;
 import tech.sbdevelopment.mapreflectionapi.utils.MainUtil;
 import tech.sbdevelopment.mapreflectionapi.utils.UpdateManager;
 
+import java.io.File;
 import java.util.logging.Level;
 
 import static com.cryptomorin.xseries.reflection.XReflection.supports;
@@ -82,11 +87,24 @@ public class MapReflectionAPI extends JavaPlugin {
             Bukkit.getPluginManager().disablePlugin(this);
             return;
         }
-        MapColorPalette.getColor(0, 0, 0); //Initializes the class
 
         getLogger().info("Loading the configuration...");
         Configuration.init(this);
 
+        getLogger().info("Loading the color palette in the background...");
+        long paletteStart = System.currentTimeMillis();
+        MapColorPalette.loadAsync(new File(getDataFolder(), "palette.cache"), Configuration.getInstance().isPalettePerceptual(), this::createColorLookup).whenComplete((result, ex) -> {
+            if (ex != null) {
+                getLogger().log(Level.SEVERE, "Failed to load the color palette!", ex);
+            } else {
+                long allocated = MapColorPalette.getLoadAllocatedBytes();
+                getLogger().info("Loaded the color palette in " + (System.currentTimeMillis() - paletteStart) + "ms"
+                        + (allocated >= 0 ? " (allocated " + (allocated >> 20) + " MiB)." : "."));
+                getLogger().info("Using the " + Configuration.getInstance().getPaletteLookup() + " color lookup ("
+                        + (MapColorPalette.getColorLookup().getMemoryUsage() >> 10) + " KiB).");
+            }
+        });
+
         getLogger().info("Loading the commands...");
         getCommand("mapmanager").setExecutor(new MapManagerCMD());
 
@@ -116,6 +134,17 @@ public class MapReflectionAPI extends JavaPlugin {
         Bukkit.getPluginManager().registerEvents(new MapListener(), this);
         Bukkit.getPluginManager().registerEvents(new PacketListener(), this);
 
+        getLogger().info("Starting the level of detail task...");
+        Bukkit.getScheduler().runTaskTimer(this, () -> {
+            if (Configuration.getInstance().isLodEnabled()) mapManager.updateLevelOfDetail();
+        }, 20, 20);
+
+        getLogger().info("Starting the memory budget task...");
+        Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> mapManager.getContentBudget().enforce(), 100, 100);
+
+        getLogger().info("Starting the map lifecycle task...");
+        Bukkit.getScheduler().runTaskTimer(this, () -> mapManager.releaseUnused(), 200, 200);
+
         getLogger().info("Loading metrics...");
         Metrics metrics = new Metrics(this, 16033);
         metrics.addCustomChart(new SingleLineChart("managed_maps", () -> mapManager.getManagedMapsCount()));
@@ -166,6 +195,18 @@ public class MapReflectionAPI extends JavaPlugin {
         getLogger().info("----------------");
     }
 
+    private MapColorLookup createColorLookup(MapColorSpaceData data) {
+        Configuration config = Configuration.getInstance();
+        switch (config.getPaletteLookup()) {
+            case REDUCED:
+                return new MCSDReducedLookup(data, config.getPaletteReducedBits(), config.isPaletteReducedRefine());
+            case KD_TREE:
+                return new MCSDKdTreeLookup(data);
+            default:
+                return data;
+        }
+    }
+
     @Override
     public void onDisable() {
         getLogger().info("MapReflectionAPI is disabled!");
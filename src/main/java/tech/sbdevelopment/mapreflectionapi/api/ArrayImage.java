@@ -20,16 +20,17 @@ package tech.sbdevelopment.mapreflectionapi.api;
 
 import com.bergerkiller.bukkit.common.map.MapColorPalette;
 import lombok.EqualsAndHashCode;
-import lombok.RequiredArgsConstructor;
+import lombok.Getter;
 import lombok.ToString;
+import tech.sbdevelopment.mapreflectionapi.api.metrics.MapMetrics;
+import tech.sbdevelopment.mapreflectionapi.api.metrics.jfr.ConversionEvent;
 
 import java.awt.*;
-import java.awt.image.BufferedImage;
+import java.awt.image.*;
 
 /**
  * An {@link ArrayImage} contains an image converted to a Minecraft byte array.
  */
-@RequiredArgsConstructor
 @EqualsAndHashCode
 @ToString
 public class ArrayImage {
@@ -38,21 +39,78 @@ public class ArrayImage {
     public int minY = 0;
     public int maxX = 128;
     public int maxY = 128;
+    @Getter
     private int width;
+    @Getter
     private int height;
     private int imageType = BufferedImage.TYPE_4BYTE_ABGR;
 
+    /**
+     * Create an ArrayImage from a Minecraft byte array of one map (128x128)
+     *
+     * @param array The Minecraft byte array
+     */
+    public ArrayImage(byte[] array) {
+        this(array, 128, 128);
+    }
+
+    /**
+     * Create an ArrayImage from a Minecraft byte array
+     *
+     * @param array  The Minecraft byte array, in row-major order
+     * @param width  The width of the image
+     * @param height The height of the image
+     */
+    public ArrayImage(byte[] array, int width, int height) {
+        this.array = array;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Create an ArrayImage from a Minecraft byte array, that was converted from an image of the given type
+     *
+     * @param array     The Minecraft byte array, in row-major order
+     * @param width     The width of the image
+     * @param height    The height of the image
+     * @param imageType The type of the {@link BufferedImage} returned by {@link #toBuffered()}
+     */
+    ArrayImage(byte[] array, int width, int height, int imageType) {
+        this(array, width, height);
+        this.imageType = imageType;
+    }
+
     /**
      * Convert a {@link BufferedImage} to an ArrayImage
      *
      * @param image image to convert
      */
     public ArrayImage(BufferedImage image) {
+        long start = System.nanoTime();
+        ConversionEvent event = new ConversionEvent();
+        event.begin();
+
         this.imageType = image.getType();
 
         this.width = image.getWidth();
         this.height = image.getHeight();
 
+        //Images with a palette only need their palette converted
+        boolean indexed = image.getColorModel() instanceof IndexColorModel && image.getRaster().getTransferType() == DataBuffer.TYPE_BYTE
+                && image.getRaster().getNumDataElements() == 1;
+        this.array = indexed ? convertIndexed(image) : convertRGB(image);
+
+        MapMetrics.get().getConversionTime().record(System.nanoTime() - start);
+        event.complete(width, height, indexed);
+    }
+
+    /**
+     * Convert an image by matching the color of every pixel
+     *
+     * @param image The image to convert
+     * @return The Minecraft byte array
+     */
+    private static byte[] convertRGB(BufferedImage image) {
         BufferedImage temp = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
         Graphics2D graphics = temp.createGraphics();
         graphics.drawImage(image, 0, 0, null);
@@ -65,8 +123,38 @@ public class ArrayImage {
         for (int i = 0; i < pixels.length; i++) {
             result[i] = MapColorPalette.getColor(new Color(pixels[i], true));
         }
+        return result;
+    }
+
+    /**
+     * Convert an image with an {@link IndexColorModel} by mapping its palette to map colors once
+     * The pixels are translated with one lookup each, or copied as is if the palette is the map palette.
+     *
+     * @param image The image to convert
+     * @return The Minecraft byte array
+     */
+    private static byte[] convertIndexed(BufferedImage image) {
+        IndexColorModel model = (IndexColorModel) image.getColorModel();
+        byte[] result = (byte[]) image.getRaster().getDataElements(0, 0, image.getWidth(), image.getHeight(), null);
+
+        byte[] remap = new byte[256];
+        boolean identity = true;
+        for (int i = 0; i < Math.min(model.getMapSize(), 256); i++) {
+            int argb = model.getRGB(i);
+            boolean transparent = (argb >>> 24) < 128;
+            remap[i] = transparent ? MapColorPalette.COLOR_TRANSPARENT : MapColorPalette.getColor((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF);
+
+            //The palette matches if every entry has the color of the map color with the same code
+            if (identity && argb != MapColorPalette.getRealColorARGB((byte) i) && !(transparent && MapColorPalette.isTransparent((byte) i))) {
+                identity = false;
+            }
+        }
+        if (identity) return result;
 
-        this.array = result;
+        for (int i = 0; i < result.length; i++) {
+            result[i] = remap[result[i] & 0xFF];
+        }
+        return result;
     }
 
     /**
@@ -75,12 +163,190 @@ public class ArrayImage {
      * @return The converted image
      */
     public BufferedImage toBuffered() {
-        BufferedImage img = new BufferedImage(width, height, this.imageType);
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                img.setRGB(x, y, MapColorPalette.getRealColor(array[y * width + x]).getRGB());
-            }
+        int[] palette = MapColorPalette.getARGBPalette();
+        BufferedImage img = new BufferedImage(width, height, this.imageType == BufferedImage.TYPE_CUSTOM ? BufferedImage.TYPE_INT_ARGB : this.imageType);
+
+        //Write the pixels straight into the data buffer if it stores ARGB ints, otherwise convert them in one go
+        int[] pixels;
+        boolean direct = img.getType() == BufferedImage.TYPE_INT_ARGB || img.getType() == BufferedImage.TYPE_INT_RGB;
+        if (direct) {
+            pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        } else {
+            pixels = new int[width * height];
+        }
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = palette[array[i] & 0xFF];
+        }
+        if (!direct) {
+            img.setRGB(0, 0, width, height, pixels, 0, width);
         }
         return img;
     }
+
+    /**
+     * Get an indexed {@link BufferedImage} of this ArrayImage
+     * The image uses the map palette as color model and wraps the byte array without copying,
+     * so changes to one are visible in the other.
+     *
+     * @return The indexed image
+     */
+    public BufferedImage toIndexed() {
+        DataBufferByte buffer = new DataBufferByte(array, width * height);
+        WritableRaster raster = Raster.createInterleavedRaster(buffer, width, height, width, 1, new int[]{0}, null);
+        return new BufferedImage(MapColorPalette.getIndexColorModel(), raster, false, null);
+    }
+
+    /**
+     * Get a part of this ArrayImage
+     * The bytes are copied row by row, so no color conversion is done.
+     *
+     * @param x      The x position of the part
+     * @param y      The y position of the part
+     * @param width  The width of the part
+     * @param height The height of the part
+     * @return The part as a new ArrayImage
+     */
+    public ArrayImage getSubImage(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || width <= 0 || height <= 0 || x + width > this.width || y + height > this.height) {
+            throw new IllegalArgumentException("The part (" + x + ", " + y + ", " + width + ", " + height + ") is outside of the image!");
+        }
+
+        byte[] result = new byte[width * height];
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(array, (y + row) * this.width + x, result, row * width, width);
+        }
+
+        ArrayImage image = new ArrayImage(result, width, height);
+        image.imageType = this.imageType;
+        return image;
+    }
+
+    /**
+     * Get a view on this ArrayImage which only sends a part of the map
+     * The view shares the byte array with this ArrayImage, only the region that is sent to the player differs.
+     *
+     * @param x      The x position of the region
+     * @param y      The y position of the region
+     * @param width  The width of the region
+     * @param height The height of the region
+     * @return The view as a new ArrayImage
+     */
+    public ArrayImage getRegion(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || width <= 0 || height <= 0 || x + width > this.width || y + height > this.height) {
+            throw new IllegalArgumentException("The region (" + x + ", " + y + ", " + width + ", " + height + ") is outside of the image!");
+        }
+
+        ArrayImage image = new ArrayImage(array, this.width, this.height);
+        image.imageType = this.imageType;
+        image.minX = x;
+        image.minY = y;
+        image.maxX = width;
+        image.maxY = height;
+        return image;
+    }
+
+    /**
+     * Get the bytes of the region that is sent to the player
+     *
+     * @return The bytes of the region, in row-major order
+     */
+    public byte[] getRegionData() {
+        //The array only contains the region already
+        if (array.length == maxX * maxY) return array;
+
+        byte[] result = new byte[maxX * maxY];
+        for (int row = 0; row < maxY; row++) {
+            System.arraycopy(array, (minY + row) * width + minX, result, row * maxX, maxX);
+        }
+        return result;
+    }
+
+    /**
+     * Get a copy of this ArrayImage with other bytes
+     * The size, region and image type are kept.
+     *
+     * @param array The bytes of the copy
+     * @return The copy as a new ArrayImage
+     */
+    ArrayImage withArray(byte[] array) {
+        ArrayImage image = new ArrayImage(array, width, height);
+        image.imageType = this.imageType;
+        image.minX = minX;
+        image.minY = minY;
+        image.maxX = maxX;
+        image.maxY = maxY;
+        return image;
+    }
+
+    /**
+     * Get a coarse version of this ArrayImage
+     * Every block of pixels gets the average color of that block, which compresses a lot better.
+     *
+     * @param blockSize The size of the blocks, must be a power of two
+     * @return The coarse version as a new ArrayImage
+     */
+    public ArrayImage getCoarse(int blockSize) {
+        if (blockSize < 2 || Integer.bitCount(blockSize) != 1) {
+            throw new IllegalArgumentException("The block size must be a power of two!");
+        }
+
+        //The blend tables are used directly
+        MapColorPalette.awaitLoaded();
+
+        //Average 2x2 pixels until one pixel is left for every block
+        byte[] level = array;
+        int levelWidth = width;
+        int levelHeight = height;
+        for (int size = 1; size < blockSize; size <<= 1) {
+            int nextWidth = (levelWidth + 1) >> 1;
+            int nextHeight = (levelHeight + 1) >> 1;
+            byte[] next = new byte[nextWidth * nextHeight];
+            for (int y = 0; y < nextHeight; y++) {
+                int top = (y << 1) * levelWidth;
+                int bottom = Math.min((y << 1) + 1, levelHeight - 1) * levelWidth;
+                for (int x = 0; x < nextWidth; x++) {
+                    int left = x << 1;
+                    int right = Math.min(left + 1, levelWidth - 1);
+                    byte topColor = MapColorPalette.COLOR_MAP_AVERAGE[MapColorPalette.getMapIndex(level[top + left], level[top + right])];
+                    byte bottomColor = MapColorPalette.COLOR_MAP_AVERAGE[MapColorPalette.getMapIndex(level[bottom + left], level[bottom + right])];
+                    next[y * nextWidth + x] = MapColorPalette.COLOR_MAP_AVERAGE[MapColorPalette.getMapIndex(topColor, bottomColor)];
+                }
+            }
+            level = next;
+            levelWidth = nextWidth;
+            levelHeight = nextHeight;
+        }
+
+        //Scale the blocks back up to the size of this image
+        int shift = Integer.numberOfTrailingZeros(blockSize);
+        byte[] result = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            int levelRow = (y >> shift) * levelWidth;
+            for (int x = 0; x < width; x++) {
+                result[y * width + x] = level[levelRow + (x >> shift)];
+            }
+        }
+
+        ArrayImage image = new ArrayImage(result, width, height);
+        image.imageType = this.imageType;
+        return image;
+    }
+
+    /**
+     * Draw another ArrayImage on a part of this ArrayImage
+     * The bytes are copied row by row, so no color conversion is done.
+     *
+     * @param image The image to draw
+     * @param x     The x position to draw at
+     * @param y     The y position to draw at
+     */
+    public void setSubImage(ArrayImage image, int x, int y) {
+        if (x < 0 || y < 0 || x + image.width > this.width || y + image.height > this.height) {
+            throw new IllegalArgumentException("The part (" + x + ", " + y + ", " + image.width + ", " + image.height + ") is outside of the image!");
+        }
+
+        for (int row = 0; row < image.height; row++) {
+            System.arraycopy(image.array, row * image.width, array, (y + row) * this.width + x, image.width);
+        }
+    }
 }
@@ -0,0 +1,274 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api;
+
+import tech.sbdevelopment.mapreflectionapi.MapReflectionAPI;
+import tech.sbdevelopment.mapreflectionapi.api.metrics.MapMetrics;
+import tech.sbdevelopment.mapreflectionapi.api.storage.CompressedContentSpill;
+import tech.sbdevelopment.mapreflectionapi.api.storage.ContentSpill;
+import tech.sbdevelopment.mapreflectionapi.api.storage.DiskContentSpill;
+import tech.sbdevelopment.mapreflectionapi.api.storage.OffHeapContentSpill;
+import tech.sbdevelopment.mapreflectionapi.api.storage.RleContentSpill;
+import tech.sbdevelopment.mapreflectionapi.managers.Configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * The {@link ContentBudget} limits the memory used by the content of the managed maps.
+ * If the content uses more than the budget, the maps that were sent the longest ago and have no online viewers
+ * are moved out of the heap by a {@link ContentSpill}. Their content is loaded again when it is needed.
+ * Content that was not sent for a while can also be compressed in the heap, no matter how much memory is used.
+ */
+public class ContentBudget {
+    //Ordered from least to most recently sent
+    private final Map<MapWrapper, Residency> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private final RleContentSpill idleSpill = new RleContentSpill();
+    private final Set<MapWrapper> spilled = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final AtomicBoolean enforcing = new AtomicBoolean();
+    private long residentBytes = 0;
+    private ContentSpill spill;
+    private ContentSpill.Type spillType;
+
+    /**
+     * Get the memory the content of the maps may use
+     *
+     * @return The budget in bytes, or <code>0</code> if there is no limit
+     */
+    public long getBudget() {
+        return Configuration.getInstance().getMemoryBudget();
+    }
+
+    /**
+     * Get the memory used by the content of the maps that are in the heap
+     *
+     * @return The memory usage in bytes
+     */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Get the amount of maps whose content is moved out of the heap
+     *
+     * @return The amount of maps
+     */
+    public synchronized int getSpilledCount() {
+        return spilled.size();
+    }
+
+    /**
+     * Get the heap memory still used by the content that is moved out of the heap
+     *
+     * @return The memory usage in bytes
+     */
+    public long getSpilledMemoryUsage() {
+        List<MapWrapper> wrappers;
+        synchronized (this) {
+            wrappers = new ArrayList<>(spilled);
+        }
+
+        long bytes = 0;
+        for (MapWrapper wrapper : wrappers) {
+            bytes += wrapper.getSpilledMemoryUsage();
+        }
+        return bytes;
+    }
+
+    /**
+     * Set the spill that moves the content out of the heap
+     * By default the spill of the configuration is used.
+     *
+     * @param spill The {@link ContentSpill} to use, or <code>null</code> to use the configuration again
+     */
+    public synchronized void setSpill(ContentSpill spill) {
+        this.spill = spill;
+        this.spillType = null;
+    }
+
+    /**
+     * Compress the idle content and move content out of the heap until the budget is met
+     * This is called periodically by the plugin, off the main thread, because moving thousands of maps
+     * can take longer than a tick. A call is skipped while the previous one is still running.
+     */
+    public void enforce() {
+        if (!enforcing.compareAndSet(false, true)) return;
+        try {
+            compressIdle();
+            enforceBudget();
+        } finally {
+            enforcing.set(false);
+        }
+    }
+
+    /**
+     * Compress the content that was not sent for the configured time
+     * The content stays in the heap, so the viewers of the map are not skipped.
+     */
+    private void compressIdle() {
+        int idleSeconds = Configuration.getInstance().getMemoryIdleCompression();
+        if (idleSeconds <= 0) return;
+
+        long idleSince = System.nanoTime() - idleSeconds * 1_000_000_000L;
+        List<MapWrapper> candidates = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<MapWrapper, Residency> entry : resident.entrySet()) {
+                if (entry.getValue().lastSent - idleSince > 0) break;
+                candidates.add(entry.getKey());
+            }
+        }
+
+        MapMetrics metrics = MapMetrics.get();
+        for (MapWrapper wrapper : candidates) {
+            long freed = wrapper.spill(idleSpill);
+            if (freed <= 0) continue;
+
+            metrics.getIdleCompressedInput().add(freed);
+            metrics.getIdleCompressedOutput().add(wrapper.getSpilledMemoryUsage());
+        }
+    }
+
+    private void enforceBudget() {
+        long budget = getBudget();
+        ContentSpill spill;
+        List<MapWrapper> candidates;
+        synchronized (this) {
+            if (budget <= 0 || residentBytes <= budget) return;
+            spill = getSpill();
+            candidates = new ArrayList<>(resident.keySet());
+        }
+
+        long excess = getResidentBytes() - budget;
+        for (MapWrapper wrapper : candidates) {
+            if (excess <= 0) break;
+            if (wrapper.hasOnlineViewers()) continue;
+
+            excess -= wrapper.spill(spill);
+        }
+    }
+
+    /**
+     * Get the spill that moves the content out of the heap
+     *
+     * @return The {@link ContentSpill}
+     */
+    public synchronized ContentSpill getSpill() {
+        ContentSpill.Type type = Configuration.getInstance().getMemorySpill();
+        if (spill == null || (spillType != null && spillType != type)) {
+            spill = createSpill(type);
+            spillType = type;
+        }
+        return spill;
+    }
+
+    private ContentSpill createSpill(ContentSpill.Type type) {
+        File folder = new File(MapReflectionAPI.getInstance().getDataFolder(), "cache");
+        if (type == null) return new CompressedContentSpill();
+        switch (type) {
+            case DISK:
+                return new DiskContentSpill(folder);
+            case RLE:
+                return new RleContentSpill();
+            case OFF_HEAP:
+                return new OffHeapContentSpill();
+            case MAPPED:
+                try {
+                    return new OffHeapContentSpill(new File(folder, "content.map"));
+                } catch (IOException ex) {
+                    MapReflectionAPI.getInstance().getLogger().log(Level.SEVERE, "Failed to map the content file, using direct memory instead!", ex);
+                    return new OffHeapContentSpill();
+                }
+            default:
+                return new CompressedContentSpill();
+        }
+    }
+
+    /**
+     * Start keeping track of a wrapper
+     *
+     * @param wrapper The {@link MapWrapper} to track
+     */
+    synchronized void track(MapWrapper wrapper) {
+        //A wrapper that is managed again can still have its content out of the heap
+        if (wrapper.getResidentContent() == null) {
+            spilled.add(wrapper);
+            return;
+        }
+
+        long bytes = wrapper.getMemoryUsage();
+        Residency previous = resident.put(wrapper, new Residency(bytes));
+        residentBytes += bytes - (previous != null ? previous.bytes : 0);
+    }
+
+    /**
+     * Stop keeping track of a wrapper
+     *
+     * @param wrapper The {@link MapWrapper} to forget
+     */
+    synchronized void untrack(MapWrapper wrapper) {
+        Residency residency = resident.remove(wrapper);
+        if (residency != null) residentBytes -= residency.bytes;
+        spilled.remove(wrapper);
+    }
+
+    /**
+     * Mark a wrapper as recently sent
+     *
+     * @param wrapper The {@link MapWrapper} that is sent
+     */
+    synchronized void touch(MapWrapper wrapper) {
+        Residency residency = resident.get(wrapper);
+        if (residency != null) residency.lastSent = System.nanoTime();
+    }
+
+    /**
+     * Update the memory usage of a tracked wrapper, after its content was changed or loaded again
+     *
+     * @param wrapper The {@link MapWrapper} that has changed
+     */
+    synchronized void updateResident(MapWrapper wrapper) {
+        if (!spilled.remove(wrapper) && !resident.containsKey(wrapper)) return;
+        track(wrapper);
+    }
+
+    /**
+     * Mark a tracked wrapper as moved out of the heap
+     *
+     * @param wrapper The {@link MapWrapper} that was spilled
+     */
+    synchronized void updateSpilled(MapWrapper wrapper) {
+        Residency residency = resident.remove(wrapper);
+        if (residency == null) return;
+
+        residentBytes -= residency.bytes;
+        spilled.add(wrapper);
+    }
+
+    private static final class Residency {
+        private final long bytes;
+        private long lastSent = System.nanoTime();
+
+        private Residency(long bytes) {
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package tech.sbdevelopment.mapreflectionapi.api;
+
+import com.bergerkiller.bukkit.common.map.MapColorPalette;
+import com.bergerkiller.bukkit.common.map.color.MapColorLookup;
+import tech.sbdevelopment.mapreflectionapi.MapReflectionAPI;
+import tech.sbdevelopment.mapreflectionapi.api.metrics.MapMetrics;
+import tech.sbdevelopment.mapreflectionapi.api.storage.RleContentSpill;
+import tech.sbdevelopment.mapreflectionapi.managers.Configuration;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * The {@link ContentStore} keeps converted images on the disk, so they don't have to be converted again after a restart.
+ * An image is addressed by a hash of its pixels and of the conversion settings, so the same image always ends up in the same file.
+ * <p>
+ * A folder can be shared by multiple servers, also at the same time. Files are written to a temporary file first
+ * and renamed when they are complete, so a file is either missing or complete. Converting an image is guarded by a file lock,
+ * so if multiple servers convert the same image, one of them converts it and the others load its result.
+ */
+public class ContentStore {
+    private static final int MAGIC = 0x4D524353; //"MRCS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 5 * Integer.BYTES;
+    private static final int LOCKS = 64;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path folder;
+    private final RleContentSpill encoder = new RleContentSpill();
+    //File locks are held by the whole JVM, so the threads of this server take turns before locking the file
+    private final Object[] locks = new Object[LOCKS];
+    private byte[] settings;
+
+    /**
+     * Create a store that keeps the images in a folder
+     *
+     * @param folder The folder to keep the images in, it is created when the first image is stored
+     */
+    public ContentStore(File folder) {
+        this.folder = folder.toPath();
+        for (int i = 0; i < LOCKS; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Get the folder the images are kept in
+     *
+     * @return The folder
+     */
+    public File getFolder() {
+        return folder.toFile();
+    }
+
+    /**
+     * Convert a {@link BufferedImage} to an {@link ArrayImage}, or load it if it was converted before
+     *
+     * @param image The image to convert
+     * @return The converted image
+     * @throws IOException If the store could not be read or locked, the image is not converted then
+     */
+    public ArrayImage convert(BufferedImage image) throws IOException {
+        String key = getKey(image);
+        Path file = folder.resolve(key.substring(0, 2)).resolve(key + ".map");
+
+        ArrayImage stored = read(file, image);
+        if (stored != null) return stored;
+
+        int stripe = Math.floorMod(key.hashCode(), LOCKS);
+        synchronized (locks[stripe]) {
+            Path lockFile = folder.resolve("locks").resolve(stripe + ".lock");
+            Files.createDirectories(lockFile.getParent());
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                //Another server might have converted the image while we waited for the lock
+                stored = read(file, image);
+                if (stored != null) return stored;
+
+                MapMetrics.get().getStoreMisses().increment();
+                ArrayImage converted = new ArrayImage(image);
+                try {
+                    write(file, key, converted);
+                } catch (IOException ex) {
+                    MapReflectionAPI.getInstance().getLogger().log(Level.WARNING, "Failed to store the converted image " + key + "!", ex);
+                }
+                return converted;
+            }
+        }
+    }
+
+    /**
+     * Read a stored image by memory-mapping its file
+     *
+     * @param file   The file of the image
+     * @param source The image that was converted
+     * @return The stored image, or <code>null</code> if it is not stored or the file is corrupt (it is converted again and replaced then)
+     * @throws IOException If the file could not be read
+     */
+    private ArrayImage read(Path file, BufferedImage source) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (width != source.getWidth() || height != source.getHeight()) return null;
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if ((int) crc.getValue() != checksum) return null;
+
+            byte[] data;
+            try {
+                data = RleContentSpill.decode(buffer, width * height);
+            } catch (IOException ex) {
+                return null;
+            }
+
+            MapMetrics.get().getStoreHits().increment();
+            MapMetrics.get().getStoreLoadTime().record(System.nanoTime() - start);
+            return new ArrayImage(data, width, height, source.getType());
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Write a converted image to its file
+     * The file is written to a temporary file first, which replaces the file when it is complete.
+     *
+     * @param file  The file of the image
+     * @param key   The key of the image
+     * @param image The converted image
+     * @throws IOException If the file could not be written
+     */
+    private void write(Path file, String key, ArrayImage image) throws IOException {
+        byte[] encoded = encoder.encode(image.array);
+        CRC32 crc = new CRC32();
+        crc.update(encoded);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(image.getWidth())
+                .putInt(image.getHeight())
+                .putInt((int) crc.getValue());
+        header.flip();
+
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), key, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer[] buffers = {header, ByteBuffer.wrap(encoded)};
+                while (buffers[1].hasRemaining()) channel.write(buffers);
+                channel.force(false);
+            }
+
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Get the key of an image, a hash of its pixels and the conversion settings
+     *
+     * @param image The image
+     * @return The key, as hexadecimal string
+     */
+    private String getKey(BufferedImage image) {
+        MessageDigest digest = sha256();
+        digest.update(getSettings());
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ByteBuffer row = ByteBuffer.allocate(Math.max(2, width) * Integer.BYTES);
+        row.putInt(width).putInt(height);
+        digest.update(row.array(), 0, row.position());
+
+        int[] pixels = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, pixels, 0, width);
+            row.clear();
+            row.asIntBuffer().put(pixels);
+            digest.update(row.array(), 0, width * Integer.BYTES);
+        }
+
+        byte[] hash = digest.digest();
+        char[] chars = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            chars[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Get the hash of the settings that change the result of a conversion
+     * The palette is part of it, so every Minecraft version has its own images. The settings are fixed once they are used,
+     * because the palette settings only change after a restart.
+     *
+     * @return The hash of the settings
+     */
+    private synchronized byte[] getSettings() {
+        if (settings != null) return settings;
+
+        Configuration config = Configuration.getInstance();
+        MessageDigest digest = sha256();
+        String lookup = config.getPaletteLookup().name();
+        if (config.getPaletteLookup() == MapColorLookup.Type.REDUCED) {
+            lookup += ";reducedBits=" + config.getPaletteReducedBits() + ";reducedRefine=" + config.isPaletteReducedRefine();
+        }
+        digest.update(("perceptual=" + config.isPalettePerceptual() + ";lookup=" + lookup).getBytes(StandardCharsets.UTF_8));
+
+        int[] palette = MapColorPalette.getARGBPalette();
+        ByteBuffer buffer = ByteBuffer.allocate(palette.length * Integer.BYTES);
+        buffer.asIntBuffer().put(palette);
+        digest.update(buffer.array());
+        settings = digest.digest();
+        return settings;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available!", ex);
+        }
+    }
+}
@@ -61,6 +61,19 @@ public interface IMapController {
      */
     void update(@NotNull ArrayImage content);
 
+    /**
+     * Update a part of the image
+     * Controllers that don't support updating a part throw an {@link UnsupportedOperationException}.
+     *
+     * @param content new {@link ArrayImage} content of the part
+     * @param x       x position of the part
+     * @param y       y position of the part
+     * @throws UnsupportedOperationException If this controller can't update a part of the image
+     */
+    default void update(@NotNull ArrayImage content, int x, int y) {
+        throw new UnsupportedOperationException(getClass().getName() + " can't update a part of the image");
+    }
+
     /**
      * Send the content to a player
      *
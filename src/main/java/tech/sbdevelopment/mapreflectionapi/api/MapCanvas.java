@@ -0,0 +1,438 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api;
+
+import com.bergerkiller.bukkit.common.map.MapColorPalette;
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * A {@link MapCanvas} draws directly on the Minecraft bytes of a copy of an {@link ArrayImage}.
+ * All colors are map color codes, so nothing has to be converted or quantized again.
+ * The image of a {@link MapWrapper} may be shared with other wrappers, so the canvas never changes it in place.
+ * The canvas keeps track of the region that changed, which can be sent with {@link #flush(IMapController)}.
+ */
+public class MapCanvas {
+    @Getter
+    private final ArrayImage image;
+    private int clipMinX, clipMinY, clipMaxX, clipMaxY;
+    private int dirtyMinX, dirtyMinY, dirtyMaxX, dirtyMaxY;
+
+    /**
+     * Create a canvas that draws on a copy of an image
+     * The given image is not changed, use {@link #flush(IMapController)} to send the drawing.
+     *
+     * @param image The {@link ArrayImage} to start from
+     */
+    public MapCanvas(ArrayImage image) {
+        //The blend tables are used directly
+        MapColorPalette.awaitLoaded();
+
+        this.image = new ArrayImage(image.array.clone(), image.getWidth(), image.getHeight());
+        resetClip();
+        clearDirty();
+    }
+
+    /**
+     * Get the width of the canvas
+     *
+     * @return The width
+     */
+    public int getWidth() {
+        return image.getWidth();
+    }
+
+    /**
+     * Get the height of the canvas
+     *
+     * @return The height
+     */
+    public int getHeight() {
+        return image.getHeight();
+    }
+
+    /**
+     * Only allow drawing inside a rectangle
+     *
+     * @param x      The x position of the rectangle
+     * @param y      The y position of the rectangle
+     * @param width  The width of the rectangle
+     * @param height The height of the rectangle
+     */
+    public void setClip(int x, int y, int width, int height) {
+        clipMinX = Math.max(0, x);
+        clipMinY = Math.max(0, y);
+        clipMaxX = Math.min(getWidth(), x + width);
+        clipMaxY = Math.min(getHeight(), y + height);
+    }
+
+    /**
+     * Allow drawing on the whole canvas
+     */
+    public void resetClip() {
+        setClip(0, 0, getWidth(), getHeight());
+    }
+
+    /**
+     * Get the color of a pixel
+     *
+     * @param x The x position
+     * @param y The y position
+     * @return The map color code, or {@link MapColorPalette#COLOR_TRANSPARENT} outside the canvas
+     */
+    public byte getPixel(int x, int y) {
+        if (x < 0 || y < 0 || x >= getWidth() || y >= getHeight()) return MapColorPalette.COLOR_TRANSPARENT;
+        return image.array[y * getWidth() + x];
+    }
+
+    /**
+     * Set the color of a pixel
+     *
+     * @param x     The x position
+     * @param y     The y position
+     * @param color The map color code
+     */
+    public void setPixel(int x, int y, byte color) {
+        setPixel(x, y, color, BlendMode.NONE);
+    }
+
+    /**
+     * Blend a color with a pixel
+     *
+     * @param x     The x position
+     * @param y     The y position
+     * @param color The map color code
+     * @param mode  The {@link BlendMode} to use
+     */
+    public void setPixel(int x, int y, byte color, BlendMode mode) {
+        if (x < clipMinX || y < clipMinY || x >= clipMaxX || y >= clipMaxY) return;
+
+        int index = y * getWidth() + x;
+        image.array[index] = mode.blend(color, image.array[index]);
+        markDirty(x, y, x + 1, y + 1);
+    }
+
+    /**
+     * Fill the canvas with a color
+     *
+     * @param color The map color code
+     */
+    public void fill(byte color) {
+        fillRect(0, 0, getWidth(), getHeight(), color);
+    }
+
+    /**
+     * Fill a rectangle with a color
+     *
+     * @param x      The x position of the rectangle
+     * @param y      The y position of the rectangle
+     * @param width  The width of the rectangle
+     * @param height The height of the rectangle
+     * @param color  The map color code
+     */
+    public void fillRect(int x, int y, int width, int height, byte color) {
+        fillRect(x, y, width, height, color, BlendMode.NONE);
+    }
+
+    /**
+     * Blend a color with a rectangle
+     *
+     * @param x      The x position of the rectangle
+     * @param y      The y position of the rectangle
+     * @param width  The width of the rectangle
+     * @param height The height of the rectangle
+     * @param color  The map color code
+     * @param mode   The {@link BlendMode} to use
+     */
+    public void fillRect(int x, int y, int width, int height, byte color, BlendMode mode) {
+        int minX = Math.max(clipMinX, x), minY = Math.max(clipMinY, y);
+        int maxX = Math.min(clipMaxX, x + width), maxY = Math.min(clipMaxY, y + height);
+        if (minX >= maxX || minY >= maxY) return;
+
+        byte[] array = image.array;
+        int canvasWidth = getWidth();
+        for (int row = minY; row < maxY; row++) {
+            int offset = row * canvasWidth;
+            if (mode == BlendMode.NONE) {
+                Arrays.fill(array, offset + minX, offset + maxX, color);
+            } else {
+                for (int i = offset + minX; i < offset + maxX; i++) {
+                    array[i] = mode.blend(color, array[i]);
+                }
+            }
+        }
+        markDirty(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Draw a line of one pixel wide
+     *
+     * @param x1    The x position of the start
+     * @param y1    The y position of the start
+     * @param x2    The x position of the end
+     * @param y2    The y position of the end
+     * @param color The map color code
+     */
+    public void drawLine(int x1, int y1, int x2, int y2, byte color) {
+        drawLine(x1, y1, x2, y2, color, BlendMode.NONE);
+    }
+
+    /**
+     * Draw a line of one pixel wide, blending it with the pixels below
+     *
+     * @param x1    The x position of the start
+     * @param y1    The y position of the start
+     * @param x2    The x position of the end
+     * @param y2    The y position of the end
+     * @param color The map color code
+     * @param mode  The {@link BlendMode} to use
+     */
+    public void drawLine(int x1, int y1, int x2, int y2, byte color, BlendMode mode) {
+        //Bresenham's line algorithm
+        int dx = Math.abs(x2 - x1), sx = x1 < x2 ? 1 : -1;
+        int dy = -Math.abs(y2 - y1), sy = y1 < y2 ? 1 : -1;
+        int error = dx + dy;
+        while (true) {
+            setPixel(x1, y1, color, mode);
+            if (x1 == x2 && y1 == y2) break;
+
+            int error2 = 2 * error;
+            if (error2 >= dy) {
+                error += dy;
+                x1 += sx;
+            }
+            if (error2 <= dx) {
+                error += dx;
+                y1 += sy;
+            }
+        }
+    }
+
+    /**
+     * Draw the outline of a rectangle
+     *
+     * @param x      The x position of the rectangle
+     * @param y      The y position of the rectangle
+     * @param width  The width of the rectangle
+     * @param height The height of the rectangle
+     * @param color  The map color code
+     */
+    public void drawRect(int x, int y, int width, int height, byte color) {
+        if (width <= 0 || height <= 0) return;
+
+        fillRect(x, y, width, 1, color);
+        fillRect(x, y + height - 1, width, 1, color);
+        fillRect(x, y + 1, 1, height - 2, color);
+        fillRect(x + width - 1, y + 1, 1, height - 2, color);
+    }
+
+    /**
+     * Draw an image, transparent pixels of the image are skipped
+     *
+     * @param source The {@link ArrayImage} to draw
+     * @param x      The x position to draw at
+     * @param y      The y position to draw at
+     */
+    public void drawImage(ArrayImage source, int x, int y) {
+        drawImage(source, 0, 0, source.getWidth(), source.getHeight(), x, y, BlendMode.NONE);
+    }
+
+    /**
+     * Draw an image, blending it with the pixels below
+     *
+     * @param source The {@link ArrayImage} to draw
+     * @param x      The x position to draw at
+     * @param y      The y position to draw at
+     * @param mode   The {@link BlendMode} to use
+     */
+    public void drawImage(ArrayImage source, int x, int y, BlendMode mode) {
+        drawImage(source, 0, 0, source.getWidth(), source.getHeight(), x, y, mode);
+    }
+
+    /**
+     * Draw a part of an image, blending it with the pixels below
+     * Transparent pixels of the image are always skipped.
+     *
+     * @param source  The {@link ArrayImage} to draw
+     * @param sourceX The x position of the part in the image
+     * @param sourceY The y position of the part in the image
+     * @param width   The width of the part
+     * @param height  The height of the part
+     * @param x       The x position to draw at
+     * @param y       The y position to draw at
+     * @param mode    The {@link BlendMode} to use
+     */
+    public void drawImage(ArrayImage source, int sourceX, int sourceY, int width, int height, int x, int y, BlendMode mode) {
+        //Clip the part to the image
+        if (sourceX < 0) {
+            width += sourceX;
+            x -= sourceX;
+            sourceX = 0;
+        }
+        if (sourceY < 0) {
+            height += sourceY;
+            y -= sourceY;
+            sourceY = 0;
+        }
+        width = Math.min(width, source.getWidth() - sourceX);
+        height = Math.min(height, source.getHeight() - sourceY);
+
+        //Clip the part to the canvas
+        int minX = Math.max(clipMinX, x), minY = Math.max(clipMinY, y);
+        int maxX = Math.min(clipMaxX, x + width), maxY = Math.min(clipMaxY, y + height);
+        if (minX >= maxX || minY >= maxY) return;
+
+        byte[] array = image.array;
+        byte[] sourceArray = source.array;
+        int canvasWidth = getWidth();
+        for (int row = minY; row < maxY; row++) {
+            int offset = row * canvasWidth;
+            int sourceOffset = (sourceY + row - y) * source.getWidth() + sourceX - x;
+            for (int column = minX; column < maxX; column++) {
+                byte color = sourceArray[sourceOffset + column];
+                if (!MapColorPalette.isTransparent(color)) {
+                    array[offset + column] = mode.blend(color, array[offset + column]);
+                }
+            }
+        }
+        markDirty(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Change the lightness of a rectangle
+     *
+     * @param x         The x position of the rectangle
+     * @param y         The y position of the rectangle
+     * @param width     The width of the rectangle
+     * @param height    The height of the rectangle
+     * @param lightness The lightness, 0 is black, 128 is the natural color and 255 is almost white
+     */
+    public void light(int x, int y, int width, int height, int lightness) {
+        int minX = Math.max(clipMinX, x), minY = Math.max(clipMinY, y);
+        int maxX = Math.min(clipMaxX, x + width), maxY = Math.min(clipMaxY, y + height);
+        if (minX >= maxX || minY >= maxY) return;
+
+        lightness = Math.max(0, Math.min(255, lightness));
+        byte[] array = image.array;
+        int canvasWidth = getWidth();
+        for (int row = minY; row < maxY; row++) {
+            for (int i = row * canvasWidth + minX; i < row * canvasWidth + maxX; i++) {
+                array[i] = MapColorPalette.COLOR_MAP_SPECULAR[((array[i] & 0xFF) << 8) | lightness];
+            }
+        }
+        markDirty(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Check if something was drawn since the last flush
+     *
+     * @return <code>true</code> if a region of the canvas changed
+     */
+    public boolean isDirty() {
+        return dirtyMinX < dirtyMaxX;
+    }
+
+    /**
+     * Get the region that changed since the last flush
+     *
+     * @return The changed region as {x, y, width, height}, or <code>null</code> if nothing changed
+     */
+    public int[] getDirtyRegion() {
+        if (!isDirty()) return null;
+        return new int[]{dirtyMinX, dirtyMinY, dirtyMaxX - dirtyMinX, dirtyMaxY - dirtyMinY};
+    }
+
+    /**
+     * Forget the changed region, without sending it
+     */
+    public void clearDirty() {
+        dirtyMinX = dirtyMinY = Integer.MAX_VALUE;
+        dirtyMaxX = dirtyMaxY = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Send the changed region to the viewers of a controller
+     * Only the maps (and the part of the map) that changed are sent.
+     * The controller stores the region in a new content array, which is hashed and indexed again.
+     *
+     * @param controller The {@link IMapController} to update
+     */
+    public void flush(IMapController controller) {
+        int[] region = getDirtyRegion();
+        if (region == null) return;
+
+        controller.update(image.getSubImage(region[0], region[1], region[2], region[3]), region[0], region[1]);
+        clearDirty();
+    }
+
+    private void markDirty(int minX, int minY, int maxX, int maxY) {
+        dirtyMinX = Math.min(dirtyMinX, minX);
+        dirtyMinY = Math.min(dirtyMinY, minY);
+        dirtyMaxX = Math.max(dirtyMaxX, maxX);
+        dirtyMaxY = Math.max(dirtyMaxY, maxY);
+    }
+
+    /**
+     * The ways to combine a drawn color with the color below it
+     * If one of the colors is transparent, the other color is used.
+     */
+    public enum BlendMode {
+        /**
+         * The drawn color replaces the color below it
+         */
+        NONE(null),
+        /**
+         * The average of both colors
+         */
+        AVERAGE(MapColorPalette.COLOR_MAP_AVERAGE),
+        /**
+         * The sum of both colors
+         */
+        ADD(MapColorPalette.COLOR_MAP_ADD),
+        /**
+         * The color below minus the drawn color
+         */
+        SUBTRACT(MapColorPalette.COLOR_MAP_SUBTRACT),
+        /**
+         * The product of both colors
+         */
+        MULTIPLY(MapColorPalette.COLOR_MAP_MULTIPLY);
+
+        private final byte[] table;
+
+        BlendMode(byte[] table) {
+            this.table = table;
+        }
+
+        /**
+         * Combine a drawn color with the color below it
+         *
+         * @param color      The drawn map color code
+         * @param background The map color code below it
+         * @return The combined map color code
+         */
+        public byte blend(byte color, byte background) {
+            if (table == null) return color;
+            if (MapColorPalette.isTransparent(color)) return background;
+            if (MapColorPalette.isTransparent(background)) return color;
+            return table[MapColorPalette.getMapIndex(color, background)];
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api;
+
+import lombok.Getter;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.LineMetrics;
+import java.awt.font.TextAttribute;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link MapFont} draws text on a {@link MapCanvas} without quantizing the text again for every update.
+ * The glyphs of the font are rasterized once into an atlas, which is converted to map colors once per color.
+ * Drawing text then only copies the glyphs from the atlas. The font is not thread-safe.
+ */
+public class MapFont {
+    private static final int INITIAL_ATLAS_HEIGHT = 64;
+
+    private final Font font;
+    private final FontRenderContext context = new FontRenderContext(null, false, true);
+    @Getter
+    private final int ascent;
+    @Getter
+    private final int lineHeight;
+    private final Map<Integer, Glyph> glyphs = new HashMap<>();
+    private final Map<Long, Integer> advances = new HashMap<>();
+    private final Map<Byte, ArrayImage> coloredAtlases = new HashMap<>();
+    private final int atlasWidth;
+    private int atlasHeight = INITIAL_ATLAS_HEIGHT;
+    private byte[] atlas;
+    private int shelfX, shelfY, shelfHeight;
+
+    /**
+     * Create a font for drawing on maps
+     * The printable ASCII characters are rasterized immediately, other characters when they are first used.
+     *
+     * @param font The {@link Font} to use, the size of the font is the size in pixels
+     */
+    public MapFont(Font font) {
+        Map<TextAttribute, Object> attributes = new HashMap<>();
+        attributes.put(TextAttribute.KERNING, TextAttribute.KERNING_ON);
+        this.font = font.deriveFont(attributes);
+
+        LineMetrics metrics = this.font.getLineMetrics("Ag", context);
+        this.ascent = (int) Math.ceil(metrics.getAscent());
+        this.lineHeight = (int) Math.ceil(metrics.getHeight());
+
+        this.atlasWidth = Math.max(512, 2 * this.font.getSize());
+        this.atlas = new byte[atlasWidth * atlasHeight];
+        for (char c = 32; c < 127; c++) {
+            getGlyph(c);
+        }
+    }
+
+    /**
+     * Get the width of a line of text
+     *
+     * @param text The text
+     * @return The width in pixels
+     */
+    public int getWidth(String text) {
+        int width = 0;
+        int lineWidth = 0;
+        int previous = -1;
+        for (int i = 0; i < text.length(); i += Character.charCount(text.codePointAt(i))) {
+            int codePoint = text.codePointAt(i);
+            if (codePoint == '\n') {
+                width = Math.max(width, lineWidth + (previous != -1 ? getGlyph(previous).advance : 0));
+                lineWidth = 0;
+                previous = -1;
+                continue;
+            }
+            if (previous != -1) lineWidth += getAdvance(previous, codePoint);
+            previous = codePoint;
+        }
+        return Math.max(width, lineWidth + (previous != -1 ? getGlyph(previous).advance : 0));
+    }
+
+    /**
+     * Draw text on a canvas
+     * The canvas clips the text and keeps track of the changed region, so the text can be sent
+     * with {@link MapCanvas#flush(IMapController)}, also when it crosses the maps of a {@link MultiMapWrapper}.
+     *
+     * @param canvas The {@link MapCanvas} to draw on
+     * @param text   The text, <code>\n</code> starts a new line
+     * @param x      The x position of the top left corner
+     * @param y      The y position of the top left corner
+     * @param color  The map color code of the text
+     * @return The region of the text as {x, y, width, height}
+     */
+    public int[] drawText(MapCanvas canvas, String text, int x, int y, byte color) {
+        ArrayImage coloredAtlas = null;
+        int penX = x;
+        int baseline = y + ascent;
+        int previous = -1;
+        for (int i = 0; i < text.length(); i += Character.charCount(text.codePointAt(i))) {
+            int codePoint = text.codePointAt(i);
+            if (codePoint == '\n') {
+                penX = x;
+                baseline += lineHeight;
+                previous = -1;
+                continue;
+            }
+            if (previous != -1) penX += getAdvance(previous, codePoint);
+            previous = codePoint;
+
+            Glyph glyph = getGlyph(codePoint);
+            if (glyph.width == 0 || glyph.height == 0) continue;
+
+            //Rasterizing a glyph changes the atlas, so the colored atlas is fetched after it
+            if (coloredAtlas == null || !coloredAtlases.containsKey(color)) coloredAtlas = getColoredAtlas(color);
+            canvas.drawImage(coloredAtlas, glyph.atlasX, glyph.atlasY, glyph.width, glyph.height,
+                    penX + glyph.offsetX, baseline + glyph.offsetY, MapCanvas.BlendMode.NONE);
+        }
+        return new int[]{x, y, getWidth(text), baseline - ascent - y + lineHeight};
+    }
+
+    private int getAdvance(int previous, int codePoint) {
+        //The advance of a pair includes the kerning between both characters
+        long key = ((long) previous << 32) | (codePoint & 0xFFFFFFFFL);
+        Integer advance = advances.get(key);
+        if (advance == null) {
+            char[] chars = (new String(Character.toChars(previous)) + new String(Character.toChars(codePoint))).toCharArray();
+            GlyphVector vector = font.layoutGlyphVector(context, chars, 0, chars.length, Font.LAYOUT_LEFT_TO_RIGHT);
+            advance = vector.getNumGlyphs() > 1 ? (int) Math.round(vector.getGlyphPosition(vector.getNumGlyphs() - 1).getX()) : getGlyph(previous).advance;
+            advances.put(key, advance);
+        }
+        return advance;
+    }
+
+    private Glyph getGlyph(int codePoint) {
+        Glyph glyph = glyphs.get(codePoint);
+        if (glyph == null) {
+            glyph = createGlyph(codePoint);
+            glyphs.put(codePoint, glyph);
+        }
+        return glyph;
+    }
+
+    private Glyph createGlyph(int codePoint) {
+        GlyphVector vector = font.createGlyphVector(context, new String(Character.toChars(codePoint)));
+        Rectangle bounds = vector.getPixelBounds(context, 0, 0);
+        int advance = (int) Math.round(vector.getGlyphPosition(vector.getNumGlyphs()).getX());
+        if (bounds.width <= 0 || bounds.height <= 0 || bounds.width > atlasWidth) {
+            return new Glyph(0, 0, 0, 0, 0, 0, advance);
+        }
+
+        //Rasterize the glyph without anti-aliasing, maps can't show partially covered pixels anyway
+        BufferedImage image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+        graphics.setColor(Color.WHITE);
+        graphics.drawGlyphVector(vector, -bounds.x, -bounds.y);
+        graphics.dispose();
+
+        //Find a place on the current shelf of the atlas, or start a new shelf
+        if (shelfX + bounds.width > atlasWidth) {
+            shelfX = 0;
+            shelfY += shelfHeight;
+            shelfHeight = 0;
+        }
+        if (shelfY + bounds.height > atlasHeight) {
+            int newHeight = Math.max(atlasHeight * 2, shelfY + bounds.height);
+            byte[] newAtlas = new byte[atlasWidth * newHeight];
+            System.arraycopy(atlas, 0, newAtlas, 0, atlas.length);
+            atlas = newAtlas;
+            atlasHeight = newHeight;
+        }
+
+        Raster raster = image.getRaster();
+        for (int row = 0; row < bounds.height; row++) {
+            for (int column = 0; column < bounds.width; column++) {
+                if (raster.getSample(column, row, 0) != 0) {
+                    atlas[(shelfY + row) * atlasWidth + shelfX + column] = 1;
+                }
+            }
+        }
+
+        Glyph glyph = new Glyph(shelfX, shelfY, bounds.width, bounds.height, bounds.x, bounds.y, advance);
+        shelfX += bounds.width;
+        shelfHeight = Math.max(shelfHeight, bounds.height);
+        coloredAtlases.clear();
+        return glyph;
+    }
+
+    private ArrayImage getColoredAtlas(byte color) {
+        ArrayImage coloredAtlas = coloredAtlases.get(color);
+        if (coloredAtlas == null) {
+            byte[] array = new byte[atlas.length];
+            for (int i = 0; i < array.length; i++) {
+                if (atlas[i] != 0) array[i] = color;
+            }
+            coloredAtlas = new ArrayImage(array, atlasWidth, atlasHeight);
+            coloredAtlases.put(color, coloredAtlas);
+        }
+        return coloredAtlas;
+    }
+
+    private static final class Glyph {
+        private final int atlasX, atlasY;
+        private final int width, height;
+        private final int offsetX, offsetY;
+        private final int advance;
+
+        private Glyph(int atlasX, int atlasY, int width, int height, int offsetX, int offsetY, int advance) {
+            this.atlasX = atlasX;
+            this.atlasY = atlasY;
+            this.width = width;
+            this.height = height;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.advance = advance;
+        }
+    }
+}
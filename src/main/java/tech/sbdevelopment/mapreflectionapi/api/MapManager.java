@@ -23,15 +23,19 @@ import org.bukkit.World;
 import org.bukkit.entity.ItemFrame;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.Nullable;
+import tech.sbdevelopment.mapreflectionapi.MapReflectionAPI;
 import tech.sbdevelopment.mapreflectionapi.api.exceptions.MapLimitExceededException;
+import tech.sbdevelopment.mapreflectionapi.api.metrics.MapMetrics;
 import tech.sbdevelopment.mapreflectionapi.managers.Configuration;
 import tech.sbdevelopment.mapreflectionapi.utils.ReflectionUtil;
 
 import java.awt.image.BufferedImage;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
 
 import static com.cryptomorin.xseries.reflection.XReflection.*;
 
@@ -41,6 +45,11 @@ import static com.cryptomorin.xseries.reflection.XReflection.*;
 public class MapManager {
     protected final Set<Integer> occupiedIds = new HashSet<>();
     protected final List<MapWrapper> managedMaps = new CopyOnWriteArrayList<>();
+    protected final Map<Integer, List<MapWrapper>> contentIndex = new ConcurrentHashMap<>();
+    protected final Set<MultiMapWrapper> lodWrappers = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    protected final Set<MapWrapper> detachedMaps = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    protected final ContentBudget contentBudget = new ContentBudget();
+    private ContentStore contentStore;
 
     /**
      * Get the amount of maps managed by the plugin
@@ -51,6 +60,84 @@ public class MapManager {
         return managedMaps.size();
     }
 
+    /**
+     * Get the amount of maps without viewers that are only kept until no plugin uses them anymore
+     *
+     * @return The detached maps amount
+     */
+    public int getDetachedMapsCount() {
+        return detachedMaps.size();
+    }
+
+    /**
+     * Get the maps managed by the plugin
+     * Detached maps are not included, they are managed again once they get a viewer.
+     *
+     * @return An unmodifiable view of the managed maps
+     */
+    public List<MapWrapper> getManagedMaps() {
+        return Collections.unmodifiableList(managedMaps);
+    }
+
+    /**
+     * Get the memory used by the content of all managed maps
+     * Wrappers that share their content are counted once, content that is moved out of the heap is not counted.
+     *
+     * @return The memory usage in bytes
+     */
+    public long getMemoryUsage() {
+        Set<byte[]> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+        long bytes = 0;
+        for (MapWrapper wrapper : managedMaps) {
+            ArrayImage content = wrapper.getResidentContent();
+            if (content != null && counted.add(content.array)) bytes += wrapper.getMemoryUsage();
+        }
+        return bytes;
+    }
+
+    /**
+     * Get the budget that limits the memory used by the content of the managed maps
+     *
+     * @return The {@link ContentBudget}
+     */
+    public ContentBudget getContentBudget() {
+        return contentBudget;
+    }
+
+    /**
+     * Get the store that keeps converted images on the disk
+     *
+     * @return The {@link ContentStore}, or <code>null</code> if the store is disabled
+     */
+    public synchronized ContentStore getContentStore() {
+        Configuration config = Configuration.getInstance();
+        if (!config.isStoreEnabled()) return null;
+
+        File folder = new File(config.getStoreFolder());
+        if (!folder.isAbsolute()) folder = new File(MapReflectionAPI.getInstance().getDataFolder(), config.getStoreFolder());
+        if (contentStore == null || !contentStore.getFolder().equals(folder)) contentStore = new ContentStore(folder);
+        return contentStore;
+    }
+
+    /**
+     * Convert a {@link BufferedImage} to an {@link ArrayImage}
+     * If the {@link ContentStore} is enabled, it is loaded from there if it was converted before.
+     *
+     * @param image The image to convert
+     * @return The converted image
+     */
+    ArrayImage convert(BufferedImage image) {
+        ContentStore store = getContentStore();
+        if (store == null) return new ArrayImage(image);
+
+        try {
+            return store.convert(image);
+        } catch (IOException ex) {
+            MapReflectionAPI.getInstance().getLogger().log(Level.WARNING, "Failed to use the content store, converting the image without it!", ex);
+            return new ArrayImage(image);
+        }
+    }
+
     /**
      * Wrap a {@link BufferedImage} in a {@link MapWrapper}
      *
@@ -58,7 +145,7 @@ public class MapManager {
      * @return The wrapper
      */
     public MapWrapper wrapImage(BufferedImage image) {
-        return wrapImage(new ArrayImage(image));
+        return wrapImage(convert(image));
     }
 
     /**
@@ -69,9 +156,13 @@ public class MapManager {
      */
     public MapWrapper wrapImage(ArrayImage image) {
         if (Configuration.getInstance().isImageCache()) {
-            for (MapWrapper wrapper : managedMaps) {
-                if (wrapper.getContent().equals(image)) return wrapper;
+            MapWrapper duplicate = getDuplicate(image);
+            if (duplicate != null) {
+                MapMetrics.get().getDedupeHits().increment();
+                duplicate.retain();
+                return duplicate;
             }
+            MapMetrics.get().getDedupeMisses().increment();
         }
         return wrapNewImage(image);
     }
@@ -130,18 +221,140 @@ public class MapManager {
      */
     private MapWrapper wrapNewImage(ArrayImage image) {
         MapWrapper wrapper = new MapWrapper(image);
+        wrapper.retain();
         managedMaps.add(wrapper);
+        indexContent(wrapper);
+        contentBudget.track(wrapper);
         return wrapper;
     }
 
     /**
      * Unwrap an image (will remove the wrapper)
+     * If the same image has been wrapped multiple times, the wrapper is removed once all of them are unwrapped.
      *
      * @param wrapper The {@link MapWrapper} to unwrap
      */
     public void unwrapImage(MapWrapper wrapper) {
+        if (wrapper.release() > 0) return;
+        removeWrapper(wrapper);
+    }
+
+    /**
+     * Remove a wrapper, no matter how often it was wrapped
+     *
+     * @param wrapper The {@link MapWrapper} to remove
+     */
+    private void removeWrapper(MapWrapper wrapper) {
         wrapper.unwrap();
         managedMaps.remove(wrapper);
+        detachedMaps.remove(wrapper);
+        unindexContent(wrapper);
+        contentBudget.untrack(wrapper);
+        wrapper.discardSpilled();
+    }
+
+    /**
+     * Detach or unwrap the maps that are no longer used
+     * Maps without viewers are detached after the configured time: they are no longer kept by this plugin,
+     * so they are garbage collected once no other plugin uses them. A detached map that is still used works as before,
+     * it's managed again when it gets a viewer or when the same image is wrapped again.
+     * Maps that were not used for longer than the time to live are unwrapped, also if they have viewers.
+     * The maps of a wall are in use as long as the wall is, so they are never detached or unwrapped here.
+     * This is called periodically by the plugin.
+     */
+    public void releaseUnused() {
+        long detachAfter = Configuration.getInstance().getLifecycleDetach() * 1_000_000_000L;
+        long ttl = Configuration.getInstance().getLifecycleTtl() * 1_000_000_000L;
+        if (detachAfter <= 0 && ttl <= 0) return;
+
+        long now = System.nanoTime();
+        for (MapWrapper wrapper : managedMaps) {
+            if (wrapper.isPartOfWall()) continue;
+
+            long unused = now - wrapper.lastUsed;
+            if (ttl > 0 && unused > ttl) {
+                removeWrapper(wrapper);
+                MapMetrics.get().getWrappersExpired().increment();
+            } else if (detachAfter > 0 && unused > detachAfter && !wrapper.hasViewers()) {
+                detach(wrapper);
+            }
+        }
+
+        if (ttl <= 0) return;
+        List<MapWrapper> detached;
+        synchronized (detachedMaps) {
+            detached = new ArrayList<>(detachedMaps);
+        }
+        for (MapWrapper wrapper : detached) {
+            if (now - wrapper.lastUsed <= ttl) continue;
+            removeWrapper(wrapper);
+            MapMetrics.get().getWrappersExpired().increment();
+        }
+    }
+
+    /**
+     * Stop keeping a wrapper without viewers, so it can be garbage collected
+     * Its content that was moved out of the heap is discarded when it's collected.
+     *
+     * @param wrapper The {@link MapWrapper} to detach
+     */
+    private void detach(MapWrapper wrapper) {
+        synchronized (detachedMaps) {
+            //A viewer might have been added in the meantime
+            if (wrapper.hasViewers() || !managedMaps.remove(wrapper)) return;
+
+            unindexContent(wrapper);
+            contentBudget.untrack(wrapper);
+            detachedMaps.add(wrapper);
+        }
+        MapMetrics.get().getWrappersDetached().increment();
+    }
+
+    /**
+     * Manage a detached wrapper again
+     *
+     * @param wrapper The {@link MapWrapper} to attach
+     */
+    void attach(MapWrapper wrapper) {
+        synchronized (detachedMaps) {
+            if (!detachedMaps.remove(wrapper)) return;
+
+            wrapper.lastUsed = System.nanoTime();
+            managedMaps.add(wrapper);
+            indexContent(wrapper);
+            contentBudget.track(wrapper);
+        }
+    }
+
+    /**
+     * Unwrap a multi image (will unwrap the wrappers of all the parts)
+     *
+     * @param wrapper The {@link MultiMapWrapper} to unwrap
+     */
+    public void unwrapImage(MultiMapWrapper wrapper) {
+        wrapper.unwrap();
+    }
+
+    /**
+     * Update the level of detail of all the {@link MultiMapWrapper}s with a location
+     * This is called periodically by the plugin.
+     */
+    public void updateLevelOfDetail() {
+        List<MultiMapWrapper> wrappers;
+        synchronized (lodWrappers) {
+            wrappers = new ArrayList<>(lodWrappers);
+        }
+        for (MultiMapWrapper wrapper : wrappers) {
+            wrapper.updateLevelOfDetail();
+        }
+    }
+
+    void registerLevelOfDetail(MultiMapWrapper wrapper) {
+        lodWrappers.add(wrapper);
+    }
+
+    void unregisterLevelOfDetail(MultiMapWrapper wrapper) {
+        lodWrappers.remove(wrapper);
     }
 
     /**
@@ -268,12 +481,14 @@ public class MapManager {
 
         //Simply increase the maximum id if it's still small enough
         if (largest + 1 < Integer.MAX_VALUE) {
+            MapMetrics.get().getIdAllocations().increment();
             return largest + 1;
         }
 
         //Otherwise iterate through all options until there is an unused id
         for (int s = 0; s < Integer.MAX_VALUE; s++) {
             if (!occupied.contains(s)) {
+                MapMetrics.get().getIdAllocations().increment();
                 return s;
             }
         }
@@ -297,17 +512,96 @@ public class MapManager {
     /**
      * Check if a MapWrapper exists for this image
      * If so, the same MapWrapper can be used
+     * A detached MapWrapper that is still used somewhere is managed again if it's found.
      *
      * @param image The {@link ArrayImage} to check for
      * @return A {@link MapWrapper} if duplicate, or null if not
      */
     @Nullable
     public MapWrapper getDuplicate(ArrayImage image) {
-        for (MapWrapper wrapper : managedMaps) {
+        int hash = image.hashCode();
+        List<MapWrapper> candidates = contentIndex.get(hash);
+        if (candidates != null) {
+            for (MapWrapper wrapper : candidates) {
+                if (image.equals(wrapper.getContent())) {
+                    return wrapper;
+                }
+            }
+        }
+
+        MapWrapper detached = getDetachedDuplicate(image, hash);
+        if (detached != null) attach(detached);
+        return detached;
+    }
+
+    /**
+     * Find a detached wrapper with the same content
+     *
+     * @param image The {@link ArrayImage} to check for
+     * @param hash  The hash of the image
+     * @return The detached {@link MapWrapper}, or <code>null</code> if there is none
+     */
+    @Nullable
+    private MapWrapper getDetachedDuplicate(ArrayImage image, int hash) {
+        List<MapWrapper> candidates = new ArrayList<>();
+        synchronized (detachedMaps) {
+            for (MapWrapper wrapper : detachedMaps) {
+                if (wrapper.contentHash == hash) candidates.add(wrapper);
+            }
+        }
+
+        //Compare outside the lock, the content might have to be loaded again
+        for (MapWrapper wrapper : candidates) {
             if (image.equals(wrapper.getContent())) {
                 return wrapper;
             }
         }
         return null;
     }
+
+    /**
+     * Add a wrapper to the content index, which is used to find duplicates
+     *
+     * @param wrapper The {@link MapWrapper} to add
+     */
+    private void indexContent(MapWrapper wrapper) {
+        //Content that is moved out of the heap didn't change since it was indexed
+        ArrayImage content = wrapper.getResidentContent();
+        if (content != null) wrapper.contentHash = content.hashCode();
+        contentIndex.compute(wrapper.contentHash, (hash, wrappers) -> {
+            if (wrappers == null) wrappers = new CopyOnWriteArrayList<>();
+            wrappers.add(wrapper);
+            return wrappers;
+        });
+    }
+
+    /**
+     * Remove a wrapper from the content index
+     *
+     * @param wrapper The {@link MapWrapper} to remove
+     * @return <code>true</code> if the wrapper was indexed
+     */
+    private boolean unindexContent(MapWrapper wrapper) {
+        boolean[] removed = new boolean[1];
+        contentIndex.computeIfPresent(wrapper.contentHash, (hash, wrappers) -> {
+            removed[0] = wrappers.remove(wrapper);
+            return wrappers.isEmpty() ? null : wrappers;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Update the content index after the content of a wrapper has changed
+     *
+     * @param wrapper The {@link MapWrapper} that has changed
+     */
+    void reindexContent(MapWrapper wrapper) {
+        //Wrappers that are not managed are not indexed, but detached wrappers are still found by their hash
+        if (unindexContent(wrapper)) {
+            indexContent(wrapper);
+        } else if (detachedMaps.contains(wrapper)) {
+            ArrayImage content = wrapper.getResidentContent();
+            if (content != null) wrapper.contentHash = content.hashCode();
+        }
+    }
 }
@@ -19,13 +19,16 @@
 package tech.sbdevelopment.mapreflectionapi.api;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import tech.sbdevelopment.mapreflectionapi.MapReflectionAPI;
+import tech.sbdevelopment.mapreflectionapi.api.metrics.MapMetrics;
+import tech.sbdevelopment.mapreflectionapi.api.metrics.jfr.PacketSendEvent;
+import tech.sbdevelopment.mapreflectionapi.api.metrics.jfr.QueueDrainEvent;
 import tech.sbdevelopment.mapreflectionapi.utils.ReflectionUtil;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 import static com.cryptomorin.xseries.reflection.XReflection.*;
 import static com.cryptomorin.xseries.reflection.minecraft.MinecraftConnection.sendPacket;
@@ -35,6 +38,12 @@ import static com.cryptomorin.xseries.reflection.minecraft.MinecraftConnection.s
  */
 public class MapSender {
     private static final List<QueuedMap> sendQueue = new ArrayList<>();
+    private static final int BYTES_PER_RUN = 11 * 128 * 128; //11 full maps per run
+    private static final int RUNS_PER_SECOND = 10; //One run every 2 ticks
+    private static final long RATE_WINDOW = 5_000_000_000L; //The send rate is measured over 5 seconds
+    private static final long[] runTimes = new long[5 * RUNS_PER_SECOND];
+    private static final int[] runBytes = new int[5 * RUNS_PER_SECOND];
+    private static int runIndex = 0;
     private static int senderID = -1;
 
     private MapSender() {
@@ -49,7 +58,10 @@ public class MapSender {
      */
     public static void addToQueue(final int id, final ArrayImage content, final Player player) {
         QueuedMap toSend = new QueuedMap(id, content, player);
-        if (sendQueue.contains(toSend)) return;
+        if (sendQueue.contains(toSend)) {
+            MapMetrics.get().getFramesCoalesced().increment();
+            return;
+        }
         sendQueue.add(toSend);
 
         runSender();
@@ -61,7 +73,54 @@ public class MapSender {
      * @param s The senderID to cancel
      */
     public static void cancelID(int s) {
+        int size = sendQueue.size();
         sendQueue.removeIf(queuedMap -> queuedMap.id == s);
+        MapMetrics.get().getFramesDropped().add(size - sendQueue.size());
+    }
+
+    /**
+     * Get the amount of maps in the send queue
+     *
+     * @return The size of the queue
+     */
+    public static int getQueueSize() {
+        return sendQueue.size();
+    }
+
+    /**
+     * Get the amount of map data in the send queue per player
+     *
+     * @return The amount of bytes by player
+     */
+    public static Map<Player, Long> getQueuedBytes() {
+        Map<Player, Long> bytes = new HashMap<>();
+        for (QueuedMap queuedMap : sendQueue) {
+            bytes.merge(queuedMap.player, (long) queuedMap.image.maxX * queuedMap.image.maxY, Long::sum);
+        }
+        return bytes;
+    }
+
+    /**
+     * Get the amount of map data the queue sends per second at most
+     *
+     * @return The budget in bytes per second, if the server runs at 20 TPS
+     */
+    public static int getBudget() {
+        return BYTES_PER_RUN * RUNS_PER_SECOND;
+    }
+
+    /**
+     * Get the amount of map data the queue sent per second, over the last 5 seconds
+     *
+     * @return The send rate in bytes per second
+     */
+    public static long getSendRate() {
+        long now = System.nanoTime();
+        long bytes = 0;
+        for (int i = 0; i < runTimes.length; i++) {
+            if (runTimes[i] != 0 && now - runTimes[i] <= RATE_WINDOW) bytes += runBytes[i];
+        }
+        return bytes * 1_000_000_000L / RATE_WINDOW;
     }
 
     /**
@@ -73,15 +132,31 @@ public class MapSender {
 
         senderID = Bukkit.getScheduler().scheduleSyncRepeatingTask(MapReflectionAPI.getInstance(), () -> {
             if (sendQueue.isEmpty()) return;
+            long start = System.nanoTime();
+            QueueDrainEvent event = new QueueDrainEvent();
+            event.begin();
 
-            for (int i = 0; i < Math.min(sendQueue.size(), 10 + 1); i++) {
+            //Partial maps only use a part of the budget, so progressive passes don't slow down the queue
+            int budget = BYTES_PER_RUN;
+            int sent = 0;
+            while (!sendQueue.isEmpty() && budget > 0) {
                 QueuedMap current = sendQueue.get(0);
-                if (current == null) return;
+                if (current == null) break;
 
+                MapMetrics.get().getQueueLatency().record(System.nanoTime() - current.queuedAt);
                 sendMap(current.id, current.image, current.player);
+                budget -= current.image.maxX * current.image.maxY;
+                sent++;
 
                 if (!sendQueue.isEmpty()) sendQueue.remove(0);
             }
+
+            runTimes[runIndex] = System.nanoTime();
+            runBytes[runIndex] = BYTES_PER_RUN - budget;
+            runIndex = (runIndex + 1) % runTimes.length;
+
+            MapMetrics.get().getDrainTime().record(System.nanoTime() - start);
+            event.complete(sent, BYTES_PER_RUN - budget, sendQueue.size());
         }, 0, 2);
     }
 
@@ -108,11 +183,15 @@ public class MapSender {
             }
             Bukkit.getScheduler().cancelTask(senderID);
             sendQueue.removeAll(toRemove);
+            MapMetrics.get().getFramesDropped().add(toRemove.size());
 
             return;
         }
 
         int id = -id0;
+        long start = System.nanoTime();
+        PacketSendEvent event = new PacketSendEvent();
+        event.begin();
 
         Object packet;
         if (supports(20, 4)) { //1.20.5+
@@ -121,7 +200,7 @@ public class MapSender {
                     content.minY, //Y pos
                     content.maxX, //X size (2nd X pos)
                     content.maxY, //Y size (2nd Y pos)
-                    content.array //Data
+                    content.getRegionData() //Data of the region
             );
 
             Object mapId = ReflectionUtil.callConstructor(getNMSClass("world.level.saveddata.maps", "MapId"), id);
@@ -139,7 +218,7 @@ public class MapSender {
                     content.minY, //Y pos
                     content.maxX, //X size (2nd X pos)
                     content.maxY, //Y size (2nd Y pos)
-                    content.array //Data
+                    content.getRegionData() //Data of the region
             );
 
             packet = ReflectionUtil.callConstructor(packetPlayOutMapClass,
@@ -176,7 +255,15 @@ public class MapSender {
             );
         }
 
+        long built = System.nanoTime();
         sendPacket(player, packet);
+
+        MapMetrics metrics = MapMetrics.get();
+        metrics.getPacketBuildTime().record(built - start);
+        metrics.getPacketSendTime().record(System.nanoTime() - built);
+        metrics.getPacketsSent().increment();
+        metrics.getBytesSent().add((long) content.maxX * content.maxY);
+        event.complete(player, id0, content.minX, content.minY, content.maxX, content.maxY);
     }
 
     @Data
@@ -184,5 +271,7 @@ public class MapSender {
         private final int id;
         private final ArrayImage image;
         private final Player player;
+        @EqualsAndHashCode.Exclude
+        private final long queuedAt = System.nanoTime();
     }
 }
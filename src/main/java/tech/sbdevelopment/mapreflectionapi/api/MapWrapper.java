@@ -18,6 +18,7 @@
 
 package tech.sbdevelopment.mapreflectionapi.api;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import org.bukkit.Bukkit;
 import org.bukkit.GameMode;
@@ -31,15 +32,26 @@ import org.jetbrains.annotations.NotNull;
 import tech.sbdevelopment.mapreflectionapi.MapReflectionAPI;
 import tech.sbdevelopment.mapreflectionapi.api.events.MapContentUpdateEvent;
 import tech.sbdevelopment.mapreflectionapi.api.exceptions.MapLimitExceededException;
+import tech.sbdevelopment.mapreflectionapi.api.metrics.MapMetrics;
+import tech.sbdevelopment.mapreflectionapi.api.storage.ContentSpill;
+import tech.sbdevelopment.mapreflectionapi.api.storage.SpilledContent;
 import tech.sbdevelopment.mapreflectionapi.managers.Configuration;
 import tech.sbdevelopment.mapreflectionapi.utils.ReflectionUtil;
 import tech.sbdevelopment.mapreflectionapi.utils.XMaterial;
 
+import java.io.IOException;
+import java.lang.ref.Cleaner;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 
 import static com.cryptomorin.xseries.reflection.XReflection.*;
 import static com.cryptomorin.xseries.reflection.minecraft.MinecraftConnection.getHandle;
@@ -51,7 +63,35 @@ import static com.cryptomorin.xseries.reflection.minecraft.MinecraftConnection.s
 @Getter
 public class MapWrapper extends AbstractMapWrapper {
     public static final String REFERENCE_METADATA = "MAP_WRAPPER_REF";
+    //Discards the content that was moved out of the heap when a detached wrapper is garbage collected
+    private static final Cleaner CLEANER = Cleaner.create();
     protected ArrayImage content;
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger references = new AtomicInteger();
+    @Getter(AccessLevel.NONE)
+    int contentHash;
+    //The block size every wall that contains this wrapper asks for, per viewer (0 = the full version)
+    @Getter(AccessLevel.NONE)
+    private final Map<UUID, Map<MultiMapWrapper, Integer>> levelOfDetail = new ConcurrentHashMap<>();
+    //The walls that contain this wrapper, it's in use as long as one of them is
+    @Getter(AccessLevel.NONE)
+    private final Set<MultiMapWrapper> walls = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    @Getter(AccessLevel.NONE)
+    private ArrayImage coarseContent;
+    @Getter(AccessLevel.NONE)
+    private ArrayImage coarseSource;
+    @Getter(AccessLevel.NONE)
+    private int coarseBlockSize;
+    //Also read by the memory budget task, which runs off the main thread
+    @Getter(AccessLevel.NONE)
+    private final Map<UUID, Integer> viewers = new ConcurrentHashMap<>();
+    @Getter(AccessLevel.NONE)
+    private final AtomicReference<SpilledContent> spilledContent = new AtomicReference<>();
+    @Getter(AccessLevel.NONE)
+    private ArrayImage spilledShell;
+    //The last time a viewer was added or removed, or the content was sent
+    @Getter(AccessLevel.NONE)
+    volatile long lastUsed = System.nanoTime();
 
     /**
      * Construct a new {@link MapWrapper}
@@ -60,6 +100,316 @@ public class MapWrapper extends AbstractMapWrapper {
      */
     public MapWrapper(ArrayImage image) {
         this.content = image;
+
+        AtomicReference<SpilledContent> spilled = spilledContent;
+        CLEANER.register(this, () -> {
+            SpilledContent leftover = spilled.getAndSet(null);
+            if (leftover != null) leftover.discard();
+        });
+    }
+
+    /**
+     * Check if this wrapper is used more than once
+     * This happens when the same image is wrapped multiple times, for example by the maps of a {@link MultiMapWrapper}.
+     *
+     * @return <code>true</code> if the wrapper is shared
+     */
+    public boolean isShared() {
+        return references.get() > 1;
+    }
+
+    /**
+     * Get the content of this wrapper
+     * If the content was moved out of the heap by the {@link ContentBudget}, it is loaded again.
+     *
+     * @return The {@link ArrayImage}
+     */
+    public synchronized ArrayImage getContent() {
+        if (content == null) rehydrate();
+        return content;
+    }
+
+    /**
+     * Get the memory used by the content of this wrapper
+     * This includes the cached coarse version, if a player sees it.
+     *
+     * @return The memory usage in bytes, or <code>0</code> if the content is moved out of the heap
+     */
+    public long getMemoryUsage() {
+        ArrayImage current = content;
+        ArrayImage coarse = coarseContent;
+        return (current != null ? current.array.length : 0) + (coarse != null ? coarse.array.length : 0);
+    }
+
+    /**
+     * Get the content of this wrapper without loading it again
+     *
+     * @return The {@link ArrayImage}, or <code>null</code> if the content is moved out of the heap
+     */
+    ArrayImage getResidentContent() {
+        return content;
+    }
+
+    /**
+     * Check if a player sees this wrapper, online or not
+     *
+     * @return <code>true</code> if the wrapper has at least one viewer
+     */
+    boolean hasViewers() {
+        return !viewers.isEmpty();
+    }
+
+    /**
+     * Check if a player that sees this wrapper is online
+     *
+     * @return <code>true</code> if at least one viewer is online
+     */
+    boolean hasOnlineViewers() {
+        for (UUID uuid : viewers.keySet()) {
+            if (Bukkit.getPlayer(uuid) != null) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Move the content of this wrapper out of the heap
+     * The content is compressed or written without holding the lock, so the wrapper can still be sent meanwhile.
+     *
+     * @param spill The {@link ContentSpill} to use
+     * @return The freed memory in bytes
+     */
+    long spill(ContentSpill spill) {
+        ArrayImage current;
+        synchronized (this) {
+            current = content;
+        }
+        if (current == null) return 0;
+
+        SpilledContent spilled;
+        try {
+            spilled = spill.spill(current.array);
+        } catch (IOException ex) {
+            MapReflectionAPI.getInstance().getLogger().log(Level.SEVERE, "Failed to move the content of a map out of the memory, keeping it in the memory!", ex);
+            return 0;
+        }
+
+        synchronized (this) {
+            //The content changed while it was moved, so the moved copy is outdated
+            if (content != current) {
+                spilled.discard();
+                return 0;
+            }
+
+            spilledContent.set(spilled);
+            long freed = getMemoryUsage();
+            spilledShell = content.withArray(new byte[0]);
+            content = null;
+            coarseContent = null;
+            coarseSource = null;
+
+            MapMetrics.get().getContentSpilled().increment();
+            MapReflectionAPI.getMapManager().getContentBudget().updateSpilled(this);
+            return freed;
+        }
+    }
+
+    /**
+     * Load the content that was moved out of the heap again
+     */
+    private void rehydrate() {
+        long start = System.nanoTime();
+        byte[] array;
+        boolean lost = false;
+        try {
+            array = spilledContent.get().load();
+        } catch (IOException ex) {
+            //The content is lost, an empty map is better than failing every time it is sent
+            MapReflectionAPI.getInstance().getLogger().log(Level.SEVERE, "Failed to load the content of a map again, the map is empty now!", ex);
+            array = new byte[spilledShell.getWidth() * spilledShell.getHeight()];
+            lost = true;
+        }
+        content = spilledShell.withArray(array);
+        discardSpilled();
+        //The index still has the hash of the lost content, which would match other images with it
+        if (lost) MapReflectionAPI.getMapManager().reindexContent(this);
+
+        MapMetrics.get().getContentRehydrated().increment();
+        MapMetrics.get().getRehydrateTime().record(System.nanoTime() - start);
+        MapReflectionAPI.getMapManager().getContentBudget().updateResident(this);
+    }
+
+    /**
+     * Remove the content that was moved out of the heap, if any
+     */
+    synchronized void discardSpilled() {
+        SpilledContent spilled = spilledContent.getAndSet(null);
+        if (spilled == null) return;
+
+        spilled.discard();
+        spilledShell = null;
+    }
+
+    /**
+     * Get the heap memory still used by the content that was moved out of the heap
+     *
+     * @return The memory usage in bytes
+     */
+    synchronized long getSpilledMemoryUsage() {
+        SpilledContent spilled = spilledContent.get();
+        return spilled != null ? spilled.getMemoryUsage() : 0;
+    }
+
+    int retain() {
+        return references.incrementAndGet();
+    }
+
+    int release() {
+        return references.decrementAndGet();
+    }
+
+    /**
+     * Set the version of the content a wall that contains this wrapper wants a player to get
+     * A player has one map ID for this wrapper, so if it's part of multiple walls, the player only gets
+     * the coarse version if all of them ask for it.
+     *
+     * @param wall      The {@link MultiMapWrapper} that contains this wrapper
+     * @param player    The player
+     * @param blockSize The block size of the coarse version, or <code>0</code> for the full version
+     * @see ArrayImage#getCoarse(int)
+     */
+    void setLevelOfDetail(MultiMapWrapper wall, OfflinePlayer player, int blockSize) {
+        levelOfDetail.computeIfAbsent(player.getUniqueId(), uuid -> new ConcurrentHashMap<>()).put(wall, blockSize);
+    }
+
+    /**
+     * Remember that a wall contains this wrapper
+     *
+     * @param wall The {@link MultiMapWrapper} that contains this wrapper
+     */
+    void addWall(MultiMapWrapper wall) {
+        walls.add(wall);
+    }
+
+    /**
+     * Forget a wall and the versions it asked for, because it no longer contains this wrapper
+     *
+     * @param wall The {@link MultiMapWrapper} to forget
+     */
+    void removeWall(MultiMapWrapper wall) {
+        walls.remove(wall);
+        for (Map<MultiMapWrapper, Integer> versions : levelOfDetail.values()) {
+            versions.remove(wall);
+        }
+    }
+
+    /**
+     * Stop showing this wrapper to a viewer of a wall
+     * The player keeps seeing it if another wall that contains this wrapper still shows it to them.
+     *
+     * @param wall   The {@link MultiMapWrapper} that no longer shows this wrapper
+     * @param player The {@link UUID} of the player
+     */
+    void removeWallViewer(MultiMapWrapper wall, UUID player) {
+        Player online = Bukkit.getPlayer(player);
+        boolean wasCoarse = online != null && isCoarse(online);
+
+        Map<MultiMapWrapper, Integer> versions = levelOfDetail.get(player);
+        if (versions != null) versions.remove(wall);
+        if (versions == null || versions.isEmpty()) {
+            removeViewer(player);
+            return;
+        }
+
+        //The other walls decide the version the player gets now
+        if (online != null && isCoarse(online) != wasCoarse) getController().sendContent(online);
+    }
+
+    private void removeViewer(UUID player) {
+        if (viewers.remove(player) != null) lastUsed = System.nanoTime();
+        levelOfDetail.remove(player);
+    }
+
+    /**
+     * Check if a wall that is still used contains this wrapper
+     *
+     * @return <code>true</code> if the wrapper is part of a wall
+     */
+    boolean isPartOfWall() {
+        return !walls.isEmpty();
+    }
+
+    /**
+     * Get the block size of the version of the content a player gets
+     *
+     * @param player The player
+     * @return The block size of the coarse version, or <code>0</code> for the full version
+     */
+    private int getBlockSize(OfflinePlayer player) {
+        Map<MultiMapWrapper, Integer> walls = levelOfDetail.get(player.getUniqueId());
+        if (walls == null || walls.isEmpty()) return 0;
+
+        int blockSize = Integer.MAX_VALUE;
+        for (int size : walls.values()) {
+            if (size <= 1) return 0;
+            blockSize = Math.min(blockSize, size);
+        }
+        return blockSize;
+    }
+
+    /**
+     * Check if a player gets a coarse version of the content
+     *
+     * @param player The player
+     * @return <code>true</code> if the player gets the coarse version
+     */
+    boolean isCoarse(OfflinePlayer player) {
+        return getBlockSize(player) > 1;
+    }
+
+    /**
+     * Add (a region of) other content to the send queue of a player
+     * This does not change the content of this wrapper.
+     *
+     * @param player  The player
+     * @param content The content to send
+     */
+    void queue(Player player, ArrayImage content) {
+        if (!controller.isViewing(player)) return;
+        lastUsed = System.nanoTime();
+        MapReflectionAPI.getMapManager().getContentBudget().touch(this);
+        MapSender.addToQueue(controller.getMapId(player), content, player);
+    }
+
+    /**
+     * Get the content that should be sent to a player
+     *
+     * @param player The player
+     * @return The full or coarse content
+     */
+    ArrayImage getContentFor(OfflinePlayer player) {
+        lastUsed = System.nanoTime();
+        MapReflectionAPI.getMapManager().getContentBudget().touch(this);
+        int blockSize = getBlockSize(player);
+
+        synchronized (this) {
+            ArrayImage content = getContent();
+            if (blockSize <= 1) return content;
+
+            //The coarse version is cached until the content or the block size changes
+            if (coarseContent == null || coarseSource != content || coarseBlockSize != blockSize) {
+                coarseContent = content.getCoarse(blockSize);
+                coarseSource = content;
+                coarseBlockSize = blockSize;
+            }
+            return coarseContent;
+        }
+    }
+
+    synchronized void setContent(ArrayImage content) {
+        discardSpilled();
+        this.content = content;
+        MapReflectionAPI.getMapManager().reindexContent(this);
+        MapReflectionAPI.getMapManager().getContentBudget().updateResident(this);
     }
 
     private static final Class<?> craftStackClass = getCraftClass("inventory.CraftItemStack");
@@ -73,18 +423,19 @@ public class MapWrapper extends AbstractMapWrapper {
     private static final Class<?> builtInRegistriesClass = getNMSClass("core.registries", "BuiltInRegistries");
 
     protected MapController controller = new MapController() {
-        private final Map<UUID, Integer> viewers = new HashMap<>();
-
         @Override
         public void addViewer(Player player) throws MapLimitExceededException {
             if (!isViewing(player)) {
                 viewers.put(player.getUniqueId(), MapReflectionAPI.getMapManager().getNextFreeIdFor(player));
+                lastUsed = System.nanoTime();
+                //A detached wrapper is managed again once it has a viewer
+                MapReflectionAPI.getMapManager().attach(MapWrapper.this);
             }
         }
 
         @Override
         public void removeViewer(OfflinePlayer player) {
-            viewers.remove(player.getUniqueId());
+            MapWrapper.this.removeViewer(player.getUniqueId());
         }
 
         @Override
@@ -92,6 +443,7 @@ public class MapWrapper extends AbstractMapWrapper {
             for (UUID uuid : viewers.keySet()) {
                 viewers.remove(uuid);
             }
+            levelOfDetail.clear();
         }
 
         @Override
@@ -102,14 +454,49 @@ public class MapWrapper extends AbstractMapWrapper {
 
         @Override
         public int getMapId(OfflinePlayer player) {
-            if (isViewing(player)) {
-                return viewers.get(player.getUniqueId());
-            }
-            return -1;
+            if (player == null) return -1;
+            Integer id = viewers.get(player.getUniqueId());
+            return id != null ? id : -1;
         }
 
         @Override
         public void update(@NotNull ArrayImage content) {
+            if (!setUpdatedContent(content)) return;
+
+            for (UUID id : viewers.keySet()) {
+                sendContent(Bukkit.getPlayer(id));
+            }
+        }
+
+        @Override
+        public void update(@NotNull ArrayImage content, int x, int y) {
+            //Copy the current content, it may be shared with other wrappers
+            ArrayImage current = getContent();
+            ArrayImage updated = current.getSubImage(0, 0, current.getWidth(), current.getHeight());
+            updated.setSubImage(content, x, y);
+            if (!setUpdatedContent(updated)) return;
+
+            //Only the changed region has to be sent, except for players that get the coarse version
+            ArrayImage region = getContent().getRegion(x, y, content.getWidth(), content.getHeight());
+            for (UUID id : viewers.keySet()) {
+                Player player = Bukkit.getPlayer(id);
+                if (player == null) continue;
+
+                if (isCoarse(player)) {
+                    sendContent(player);
+                } else {
+                    queue(player, region);
+                }
+            }
+        }
+
+        /**
+         * Call the {@link MapContentUpdateEvent} and set the new content
+         *
+         * @param content The new content
+         * @return <code>true</code> if the content should be sent to the viewers
+         */
+        private boolean setUpdatedContent(ArrayImage content) {
             boolean async = !MapReflectionAPI.getInstance().getServer().isPrimaryThread();
             MapContentUpdateEvent event = new MapContentUpdateEvent(MapWrapper.this, content, async);
             Bukkit.getPluginManager().callEvent(event);
@@ -117,18 +504,13 @@ public class MapWrapper extends AbstractMapWrapper {
             if (Configuration.getInstance().isImageCache()) {
                 MapWrapper duplicate = MapReflectionAPI.getMapManager().getDuplicate(content);
                 if (duplicate != null) {
-                    MapWrapper.this.content = duplicate.getContent();
-                    return;
+                    setContent(duplicate.getContent());
+                    return event.isSendContent();
                 }
             }
 
-            MapWrapper.this.content = content;
-
-            if (event.isSendContent()) {
-                for (UUID id : viewers.keySet()) {
-                    sendContent(Bukkit.getPlayer(id));
-                }
-            }
+            setContent(content);
+            return event.isSendContent();
         }
 
         @Override
@@ -141,10 +523,11 @@ public class MapWrapper extends AbstractMapWrapper {
             if (!isViewing(player)) return;
 
             int id = getMapId(player);
+            ArrayImage content = getContentFor(player);
             if (withoutQueue) {
-                MapSender.sendMap(id, MapWrapper.this.content, player);
+                MapSender.sendMap(id, content, player);
             } else {
-                MapSender.addToQueue(id, MapWrapper.this.content, player);
+                MapSender.addToQueue(id, content, player);
             }
         }
 
@@ -18,6 +18,7 @@
 
 package tech.sbdevelopment.mapreflectionapi.api;
 
+import org.bukkit.Location;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.ItemFrame;
 import org.bukkit.entity.Player;
@@ -62,6 +63,20 @@ public interface MultiMapController extends IMapController {
      */
     void update(@NotNull ArrayImage content);
 
+    /**
+     * Update a part of the image
+     * Only the maps that are covered by the part are updated.
+     * Controllers that don't support updating a part throw an {@link UnsupportedOperationException}.
+     *
+     * @param content new {@link ArrayImage} content of the part
+     * @param x       x position of the part
+     * @param y       y position of the part
+     * @throws UnsupportedOperationException If this controller can't update a part of the image
+     */
+    default void update(@NotNull ArrayImage content, int x, int y) {
+        throw new UnsupportedOperationException(getClass().getName() + " can't update a part of the image");
+    }
+
     /**
      * Send the content to a player
      *
@@ -82,6 +97,17 @@ public interface MultiMapController extends IMapController {
      */
     void cancelSend();
 
+    /**
+     * Set the location of the {@link ItemFrame}s
+     * If level of detail is enabled, players that are far away from this location get a coarse version of the maps.
+     *
+     * Controllers that don't support level of detail ignore the location.
+     *
+     * @param location {@link Location} of the center of the frames, or <code>null</code> to always send the full version
+     */
+    default void setLocation(Location location) {
+    }
+
     /**
      * Show this {@link MultiMapController} in {@link ItemFrame}s
      *
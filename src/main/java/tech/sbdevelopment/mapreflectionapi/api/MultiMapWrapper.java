@@ -18,23 +18,29 @@
 
 package tech.sbdevelopment.mapreflectionapi.api;
 
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.ItemFrame;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import tech.sbdevelopment.mapreflectionapi.MapReflectionAPI;
 import tech.sbdevelopment.mapreflectionapi.api.exceptions.MapLimitExceededException;
+import tech.sbdevelopment.mapreflectionapi.managers.Configuration;
 
 import java.awt.image.BufferedImage;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.UUID;
+import java.util.*;
+import java.util.logging.Level;
 
 /**
  * A {@link MultiMapWrapper} wraps one image split in pieces.
  */
 public class MultiMapWrapper extends AbstractMapWrapper {
     private final MapWrapper[][] wrapperMatrix;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final Set<UUID> coarseViewers = new HashSet<>();
+    private Location location;
 
     /**
      * Creates a new {@link MultiMapWrapper} from the given image.
@@ -45,7 +51,7 @@ public class MultiMapWrapper extends AbstractMapWrapper {
      * @param columns The amount of columns
      */
     public MultiMapWrapper(BufferedImage image, int rows, int columns) {
-        this(splitImage(image, rows, columns));
+        this(MapReflectionAPI.getMapManager().convert(image), rows, columns);
     }
 
     /**
@@ -57,7 +63,7 @@ public class MultiMapWrapper extends AbstractMapWrapper {
      * @param columns The amount of columns
      */
     public MultiMapWrapper(ArrayImage image, int rows, int columns) {
-        this(splitImage(image.toBuffered(), rows, columns));
+        this(splitImage(image, rows, columns));
     }
 
     /**
@@ -69,6 +75,8 @@ public class MultiMapWrapper extends AbstractMapWrapper {
     @Deprecated(since = "1.6", forRemoval = true)
     public MultiMapWrapper(ArrayImage[][] imageMatrix) {
         wrapperMatrix = new MapWrapper[imageMatrix.length][imageMatrix[0].length];
+        tileWidth = imageMatrix[0][0].getWidth();
+        tileHeight = imageMatrix[0][0].getHeight();
 
         for (int row = 0; row < imageMatrix.length; row++) {
             if (imageMatrix[row].length != imageMatrix[0].length) {
@@ -77,6 +85,7 @@ public class MultiMapWrapper extends AbstractMapWrapper {
 
             for (int column = 0; column < imageMatrix[row].length; column++) {
                 wrapperMatrix[row][column] = MapReflectionAPI.getMapManager().wrapImage(imageMatrix[row][column]);
+                wrapperMatrix[row][column].addWall(this);
             }
         }
     }
@@ -90,6 +99,8 @@ public class MultiMapWrapper extends AbstractMapWrapper {
     @Deprecated(since = "1.6", forRemoval = true)
     public MultiMapWrapper(BufferedImage[][] imageMatrix) {
         wrapperMatrix = new MapWrapper[imageMatrix.length][imageMatrix[0].length];
+        tileWidth = imageMatrix[0][0].getWidth();
+        tileHeight = imageMatrix[0][0].getHeight();
 
         for (int row = 0; row < imageMatrix.length; row++) {
             if (imageMatrix[row].length != imageMatrix[0].length) {
@@ -98,43 +109,51 @@ public class MultiMapWrapper extends AbstractMapWrapper {
 
             for (int column = 0; column < imageMatrix[row].length; column++) {
                 wrapperMatrix[row][column] = MapReflectionAPI.getMapManager().wrapImage(imageMatrix[row][column]);
+                wrapperMatrix[row][column].addWall(this);
             }
         }
     }
 
     private final MultiMapController controller = new MultiMapController() {
         private final Set<UUID> viewers = new HashSet<>();
+        private final Map<UUID, Integer[][]> frames = new HashMap<>();
+        private final Map<UUID, DebugCallable> debugCallables = new HashMap<>();
 
         @Override
         public void addViewer(Player player) throws MapLimitExceededException {
             if (!viewers.contains(player.getUniqueId())) {
-                for (MapWrapper[] mapWrappers : wrapperMatrix) {
-                    for (MapWrapper wrapper : mapWrappers) {
-                        wrapper.getController().addViewer(player);
-                    }
+                for (MapWrapper wrapper : getWrappers()) {
+                    wrapper.getController().addViewer(player);
+                    wrapper.setLevelOfDetail(MultiMapWrapper.this, player, 0);
                 }
                 viewers.add(player.getUniqueId());
+                updateLevelOfDetail(player, false);
             }
         }
 
         @Override
         public void removeViewer(OfflinePlayer player) {
-            for (MapWrapper[] mapWrappers : wrapperMatrix) {
-                for (MapWrapper wrapper : mapWrappers) {
-                    wrapper.getController().removeViewer(player);
-                }
+            for (MapWrapper wrapper : getWrappers()) {
+                wrapper.removeWallViewer(MultiMapWrapper.this, player.getUniqueId());
             }
             viewers.remove(player.getUniqueId());
+            frames.remove(player.getUniqueId());
+            debugCallables.remove(player.getUniqueId());
+            coarseViewers.remove(player.getUniqueId());
         }
 
         @Override
         public void clearViewers() {
-            for (MapWrapper[] mapWrappers : wrapperMatrix) {
-                for (MapWrapper wrapper : mapWrappers) {
-                    wrapper.getController().clearViewers();
+            //Wrappers shared with other walls keep the viewers of those walls
+            for (MapWrapper wrapper : getWrappers()) {
+                for (UUID uuid : viewers) {
+                    wrapper.removeWallViewer(MultiMapWrapper.this, uuid);
                 }
             }
             viewers.clear();
+            frames.clear();
+            debugCallables.clear();
+            coarseViewers.clear();
         }
 
         @Override
@@ -144,10 +163,110 @@ public class MultiMapWrapper extends AbstractMapWrapper {
 
         @Override
         public void update(@NotNull ArrayImage content) {
-            ArrayImage[][] split = splitImage(content.toBuffered(), wrapperMatrix.length, wrapperMatrix[0].length);
+            int chunkWidth = content.getWidth() / wrapperMatrix[0].length;
+            int chunkHeight = content.getHeight() / wrapperMatrix.length;
+
             for (int row = 0; row < wrapperMatrix.length; row++) {
                 for (int column = 0; column < wrapperMatrix[row].length; column++) {
-                    wrapperMatrix[row][column].getController().update(split[row][column]);
+                    int x = column * chunkWidth;
+                    int y = row * chunkHeight;
+
+                    //Only update the maps of which the content has changed
+                    MapWrapper wrapper = wrapperMatrix[row][column];
+                    if (regionEquals(content, x, y, wrapper.getContent(), 0, 0, chunkWidth, chunkHeight)) continue;
+
+                    updateTile(row, column, content.getSubImage(x, y, chunkWidth, chunkHeight));
+                }
+            }
+        }
+
+        @Override
+        public void update(@NotNull ArrayImage content, int x, int y) {
+            for (int row = 0; row < wrapperMatrix.length; row++) {
+                for (int column = 0; column < wrapperMatrix[row].length; column++) {
+                    int tileX = column * tileWidth;
+                    int tileY = row * tileHeight;
+
+                    //The part of the content that is on this map
+                    int minX = Math.max(x, tileX);
+                    int minY = Math.max(y, tileY);
+                    int maxX = Math.min(x + content.getWidth(), tileX + tileWidth);
+                    int maxY = Math.min(y + content.getHeight(), tileY + tileHeight);
+                    if (minX >= maxX || minY >= maxY) continue;
+
+                    MapWrapper wrapper = wrapperMatrix[row][column];
+                    if (regionEquals(content, minX - x, minY - y, wrapper.getContent(), minX - tileX, minY - tileY, maxX - minX, maxY - minY))
+                        continue;
+
+                    ArrayImage part = content.getSubImage(minX - x, minY - y, maxX - minX, maxY - minY);
+                    if (!wrapper.isShared()) {
+                        //Only this map uses the wrapper, so it's updated in place and only the changed region is sent
+                        wrapper.getController().update(part, minX - tileX, minY - tileY);
+                        continue;
+                    }
+
+                    //Other maps use the same wrapper, so this map gets a copy with the part applied
+                    ArrayImage current = wrapper.getContent();
+                    ArrayImage updated = current.getSubImage(0, 0, current.getWidth(), current.getHeight());
+                    updated.setSubImage(part, minX - tileX, minY - tileY);
+                    updateTile(row, column, updated);
+                }
+            }
+        }
+
+        /**
+         * Update the content of one map
+         * If the map shares its {@link MapWrapper} with other maps, or the new content is already wrapped,
+         * the map gets another {@link MapWrapper} instead, so identical maps keep sharing one map ID.
+         *
+         * @param row     The row of the map
+         * @param column  The column of the map
+         * @param content The new content
+         */
+        private void updateTile(int row, int column, ArrayImage content) {
+            MapWrapper current = wrapperMatrix[row][column];
+            if (!Configuration.getInstance().isImageCache()) {
+                current.getController().update(content);
+                return;
+            }
+
+            MapManager manager = MapReflectionAPI.getMapManager();
+            MapWrapper duplicate = manager.getDuplicate(content);
+            if (duplicate == current) return;
+            if (duplicate == null && !current.isShared()) {
+                current.getController().update(content);
+                return;
+            }
+
+            MapWrapper replacement = manager.wrapImage(content);
+            wrapperMatrix[row][column] = replacement;
+            replacement.addWall(MultiMapWrapper.this);
+            //The old wrapper can still be used by other maps of this wall
+            if (!getWrappers().contains(current)) {
+                for (UUID uuid : viewers) {
+                    current.removeWallViewer(MultiMapWrapper.this, uuid);
+                }
+                current.removeWall(MultiMapWrapper.this);
+            }
+            manager.unwrapImage(current);
+
+            for (UUID uuid : viewers) {
+                Player player = Bukkit.getPlayer(uuid);
+                if (player == null) continue;
+
+                try {
+                    replacement.getController().addViewer(player);
+                } catch (MapLimitExceededException e) {
+                    MapReflectionAPI.getInstance().getLogger().log(Level.WARNING, e.getMessage(), e);
+                    continue;
+                }
+                replacement.setLevelOfDetail(MultiMapWrapper.this, player, coarseViewers.contains(uuid) ? Configuration.getInstance().getLodBlockSize() : 0);
+                replacement.getController().sendContent(player);
+
+                Integer[][] entityIdMatrix = frames.get(uuid);
+                if (entityIdMatrix != null && entityIdMatrix[row][column] != null) {
+                    DebugCallable callable = debugCallables.get(uuid);
+                    replacement.getController().showInFrame(player, entityIdMatrix[row][column], callable != null ? callable.call(replacement.getController(), row, column) : null);
                 }
             }
         }
@@ -159,24 +278,70 @@ public class MultiMapWrapper extends AbstractMapWrapper {
 
         @Override
         public void sendContent(Player player, boolean withoutQueue) {
-            for (MapWrapper[] mapWrappers : wrapperMatrix) {
-                for (MapWrapper wrapper : mapWrappers) {
-                    wrapper.getController().sendContent(player, withoutQueue);
+            if (!withoutQueue && Configuration.getInstance().isProgressiveEnabled()) {
+                sendContentProgressive(player);
+                return;
+            }
+
+            //Maps that share a wrapper are only sent once
+            for (MapWrapper wrapper : getWrappers()) {
+                wrapper.getController().sendContent(player, withoutQueue);
+            }
+        }
+
+        /**
+         * Send the content to a player in multiple passes
+         * The first pass sends a coarse version of every map, the next passes refine every map band by band.
+         * Because the queue is sent in order, the whole wall is visible before the first map is complete.
+         *
+         * @param player The player to send to
+         */
+        private void sendContentProgressive(Player player) {
+            Configuration config = Configuration.getInstance();
+            Set<MapWrapper> wrappers = getWrappers();
+
+            //First pass: a coarse version of every map, players that get the coarse version are done after this
+            List<MapWrapper> refine = new ArrayList<>(wrappers.size());
+            for (MapWrapper wrapper : wrappers) {
+                if (wrapper.isCoarse(player)) {
+                    wrapper.getController().sendContent(player);
+                } else {
+                    wrapper.queue(player, wrapper.getContent().getCoarse(config.getProgressiveBlockSize()));
+                    refine.add(wrapper);
+                }
+            }
+
+            //Next passes: the full content of every map, one band per pass
+            int passes = config.getProgressivePasses();
+            for (int pass = 0; pass < passes; pass++) {
+                for (MapWrapper wrapper : refine) {
+                    ArrayImage content = wrapper.getContent();
+                    int bandHeight = (content.getHeight() + passes - 1) / passes;
+                    int y = pass * bandHeight;
+                    if (y >= content.getHeight()) continue;
+
+                    wrapper.queue(player, content.getRegion(0, y, content.getWidth(), Math.min(bandHeight, content.getHeight() - y)));
                 }
             }
         }
 
         @Override
         public void cancelSend() {
-            for (MapWrapper[] mapWrappers : wrapperMatrix) {
-                for (MapWrapper wrapper : mapWrappers) {
-                    wrapper.getController().cancelSend();
-                }
+            for (MapWrapper wrapper : getWrappers()) {
+                wrapper.getController().cancelSend();
             }
         }
 
+        @Override
+        public void setLocation(Location location) {
+            MultiMapWrapper.this.location = location;
+            if (location != null) MapReflectionAPI.getMapManager().registerLevelOfDetail(MultiMapWrapper.this);
+        }
+
         @Override
         public void showInFrames(Player player, Integer[][] entityIdMatrix) {
+            frames.put(player.getUniqueId(), entityIdMatrix);
+            debugCallables.remove(player.getUniqueId());
             for (int row = 0; row < entityIdMatrix.length; row++) {
                 for (int column = 0; column < entityIdMatrix[row].length; column++) {
                     wrapperMatrix[row][column].getController().showInFrame(player, entityIdMatrix[row][column]);
@@ -186,6 +351,8 @@ public class MultiMapWrapper extends AbstractMapWrapper {
 
         @Override
         public void showInFrames(Player player, Integer[][] entityIdMatrix, DebugCallable callable) {
+            frames.put(player.getUniqueId(), entityIdMatrix);
+            debugCallables.put(player.getUniqueId(), callable);
             for (int row = 0; row < entityIdMatrix.length; row++) {
                 for (int column = 0; column < entityIdMatrix[row].length; column++) {
                     wrapperMatrix[row][column].getController().showInFrame(player, entityIdMatrix[row][column], callable.call(wrapperMatrix[row][column].getController(), row, column));
@@ -195,11 +362,22 @@ public class MultiMapWrapper extends AbstractMapWrapper {
 
         @Override
         public void showInFrames(Player player, ItemFrame[][] itemFrameMatrix, boolean force) {
+            Integer[][] entityIdMatrix = new Integer[itemFrameMatrix.length][];
             for (int row = 0; row < itemFrameMatrix.length; row++) {
+                entityIdMatrix[row] = new Integer[itemFrameMatrix[row].length];
                 for (int column = 0; column < itemFrameMatrix[row].length; column++) {
+                    entityIdMatrix[row][column] = itemFrameMatrix[row][column].getEntityId();
                     wrapperMatrix[row][column].getController().showInFrame(player, itemFrameMatrix[row][column], force);
                 }
             }
+            frames.put(player.getUniqueId(), entityIdMatrix);
+            debugCallables.remove(player.getUniqueId());
+
+            //Use the center frame for the level of detail, if no location has been set
+            if (location == null) {
+                ItemFrame[] centerRow = itemFrameMatrix[itemFrameMatrix.length / 2];
+                setLocation(centerRow[centerRow.length / 2].getLocation());
+            }
         }
 
         @Override
@@ -209,6 +387,8 @@ public class MultiMapWrapper extends AbstractMapWrapper {
 
         @Override
         public void clearFrames(Player player, Integer[][] entityIdMatrix) {
+            frames.remove(player.getUniqueId());
+            debugCallables.remove(player.getUniqueId());
             for (int row = 0; row < entityIdMatrix.length; row++) {
                 for (int column = 0; column < entityIdMatrix[row].length; column++) {
                     wrapperMatrix[row][column].getController().clearFrame(player, entityIdMatrix[row][column]);
@@ -218,6 +398,8 @@ public class MultiMapWrapper extends AbstractMapWrapper {
 
         @Override
         public void clearFrames(Player player, ItemFrame[][] itemFrameMatrix) {
+            frames.remove(player.getUniqueId());
+            debugCallables.remove(player.getUniqueId());
             for (int row = 0; row < itemFrameMatrix.length; row++) {
                 for (int column = 0; column < itemFrameMatrix[row].length; column++) {
                     wrapperMatrix[row][column].getController().clearFrame(player, itemFrameMatrix[row][column]);
@@ -227,14 +409,15 @@ public class MultiMapWrapper extends AbstractMapWrapper {
     };
 
     /**
-     * Splits a BufferedImage into a matrix of ArrayImages.
+     * Splits an ArrayImage into a matrix of ArrayImages.
+     * The tiles are sliced from the byte array, so no color conversion is done.
      *
      * @param image   The image to split
      * @param rows    The number of rows
      * @param columns The number of columns
      * @return The matrix of ArrayImages
      */
-    private static ArrayImage[][] splitImage(final BufferedImage image, final int rows, final int columns) {
+    private static ArrayImage[][] splitImage(final ArrayImage image, final int rows, final int columns) {
         int chunkWidth = image.getWidth() / columns;
         int chunkHeight = image.getHeight() / rows;
 
@@ -242,17 +425,116 @@ public class MultiMapWrapper extends AbstractMapWrapper {
 
         for (int i = 0; i < rows; i++) {
             for (int j = 0; j < columns; j++) {
-                int x = j * chunkWidth;
-                int y = i * chunkHeight;
-
-                BufferedImage raw = image.getSubimage(x, y, chunkWidth, chunkHeight);
-                images[i][j] = new ArrayImage(raw);
+                images[i][j] = image.getSubImage(j * chunkWidth, i * chunkHeight, chunkWidth, chunkHeight);
             }
         }
 
         return images;
     }
 
+    /**
+     * Get the distinct wrappers of this {@link MultiMapWrapper}
+     * Maps with the same content share one wrapper, so these are only returned once.
+     *
+     * @return The wrappers, in row-major order
+     */
+    private Set<MapWrapper> getWrappers() {
+        Set<MapWrapper> wrappers = new LinkedHashSet<>();
+        for (MapWrapper[] mapWrappers : wrapperMatrix) {
+            Collections.addAll(wrappers, mapWrappers);
+        }
+        return wrappers;
+    }
+
+    /**
+     * Send the full or coarse version of the maps to the viewers, based on their distance to the location
+     */
+    void updateLevelOfDetail() {
+        if (location == null) return;
+
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            if (controller.isViewing(player)) updateLevelOfDetail(player, true);
+        }
+    }
+
+    /**
+     * Send the full or coarse version of the maps to a viewer, based on the distance to the location
+     * Players get the coarse version beyond the configured distance, and get the full version again
+     * once they are closer than the distance minus the hysteresis.
+     *
+     * @param player The viewer
+     * @param send   <code>true</code> to send the maps if the level of detail has changed
+     */
+    private void updateLevelOfDetail(Player player, boolean send) {
+        Configuration config = Configuration.getInstance();
+        boolean coarse = coarseViewers.contains(player.getUniqueId());
+
+        boolean shouldBeCoarse = false;
+        if (config.isLodEnabled() && location != null && player.getWorld().equals(location.getWorld())) {
+            double distance = coarse ? config.getLodDistance() - config.getLodHysteresis() : config.getLodDistance();
+            shouldBeCoarse = player.getLocation().distanceSquared(location) > distance * distance;
+        }
+        if (coarse == shouldBeCoarse) return;
+
+        if (shouldBeCoarse) {
+            coarseViewers.add(player.getUniqueId());
+        } else {
+            coarseViewers.remove(player.getUniqueId());
+        }
+
+        int blockSize = shouldBeCoarse ? config.getLodBlockSize() : 0;
+        for (MapWrapper wrapper : getWrappers()) {
+            //A map that is also part of a nearby wall keeps the full version
+            boolean wasCoarse = wrapper.isCoarse(player);
+            wrapper.setLevelOfDetail(this, player, blockSize);
+            if (send && wrapper.isCoarse(player) != wasCoarse) wrapper.getController().sendContent(player);
+        }
+    }
+
+    @Override
+    protected void unwrap() {
+        //Release the wrappers, shared wrappers stay alive for the other maps using them
+        //Their viewers are removed first, so they don't keep map IDs for this wall
+        controller.clearViewers();
+        MapManager manager = MapReflectionAPI.getMapManager();
+        for (MapWrapper[] mapWrappers : wrapperMatrix) {
+            for (MapWrapper wrapper : mapWrappers) {
+                wrapper.removeWall(this);
+                manager.unwrapImage(wrapper);
+            }
+        }
+        manager.unregisterLevelOfDetail(this);
+    }
+
+    /**
+     * Checks if a part of two ArrayImages contains the same bytes.
+     *
+     * @param first   The first image
+     * @param firstX  The x position of the part in the first image
+     * @param firstY  The y position of the part in the first image
+     * @param second  The second image
+     * @param secondX The x position of the part in the second image
+     * @param secondY The y position of the part in the second image
+     * @param width   The width of the part
+     * @param height  The height of the part
+     * @return <code>true</code> if the parts are equal
+     */
+    private static boolean regionEquals(final ArrayImage first, final int firstX, final int firstY, final ArrayImage second, final int secondX, final int secondY, final int width, final int height) {
+        if (firstX + width > first.getWidth() || firstY + height > first.getHeight()
+                || secondX + width > second.getWidth() || secondY + height > second.getHeight()) {
+            return false;
+        }
+
+        for (int row = 0; row < height; row++) {
+            int firstIndex = (firstY + row) * first.getWidth() + firstX;
+            int secondIndex = (secondY + row) * second.getWidth() + secondX;
+            if (!Arrays.equals(first.array, firstIndex, firstIndex + width, second.array, secondIndex, secondIndex + width)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public MultiMapController getController() {
         return controller;
@@ -0,0 +1,38 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api.metrics;
+
+/**
+ * A {@link Counter} counts how often something happened.
+ */
+public interface Counter {
+    /**
+     * Add one to the counter
+     */
+    default void increment() {
+        add(1);
+    }
+
+    /**
+     * Add an amount to the counter
+     *
+     * @param amount The amount to add
+     */
+    void add(long amount);
+}
@@ -0,0 +1,178 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api.metrics;
+
+import lombok.Getter;
+import tech.sbdevelopment.mapreflectionapi.api.MapSender;
+
+/**
+ * The {@link MapMetrics} contains the metrics of the map delivery.
+ * By default they are kept in a {@link SimpleMetricsRegistry}, which is shown by <code>/mapmanager stats</code>.
+ */
+@Getter
+public class MapMetrics {
+    private static volatile MapMetrics instance = new MapMetrics(new SimpleMetricsRegistry());
+
+    private final MetricsRegistry registry;
+    /**
+     * The time between adding a map to the send queue and sending it, in nanoseconds
+     */
+    private final Histogram queueLatency;
+    /**
+     * The time spent on the main thread to process the send queue, in nanoseconds
+     */
+    private final Histogram drainTime;
+    /**
+     * The time to build a map packet, in nanoseconds
+     */
+    private final Histogram packetBuildTime;
+    /**
+     * The time to hand a map packet to the connection of the player, in nanoseconds
+     */
+    private final Histogram packetSendTime;
+    /**
+     * The map packets sent to players
+     */
+    private final Counter packetsSent;
+    /**
+     * The bytes of map data sent to players
+     */
+    private final Counter bytesSent;
+    /**
+     * The frames that were already in the send queue, so they were sent once
+     */
+    private final Counter framesCoalesced;
+    /**
+     * The frames that were removed from the send queue without sending them
+     */
+    private final Counter framesDropped;
+    /**
+     * The map IDs given out to players
+     */
+    private final Counter idAllocations;
+    /**
+     * The wrapped images that reused an existing wrapper
+     */
+    private final Counter dedupeHits;
+    /**
+     * The wrapped images that needed a new wrapper, while the image cache is enabled
+     */
+    private final Counter dedupeMisses;
+    /**
+     * The wrappers without viewers that were detached, so they can be garbage collected
+     */
+    private final Counter wrappersDetached;
+    /**
+     * The wrappers that were unwrapped because they were not used for longer than the time to live
+     */
+    private final Counter wrappersExpired;
+    /**
+     * The map contents that were moved out of the heap by the {@link tech.sbdevelopment.mapreflectionapi.api.ContentBudget}
+     */
+    private final Counter contentSpilled;
+    /**
+     * The map contents that were loaded again after they were moved out of the heap
+     */
+    private final Counter contentRehydrated;
+    /**
+     * The time to load map content again after it was moved out of the heap, in nanoseconds
+     */
+    private final Histogram rehydrateTime;
+    /**
+     * The bytes of idle map content that were compressed
+     */
+    private final Counter idleCompressedInput;
+    /**
+     * The bytes the idle map content was compressed to
+     */
+    private final Counter idleCompressedOutput;
+    /**
+     * The converted images that were loaded from the {@link tech.sbdevelopment.mapreflectionapi.api.ContentStore}
+     */
+    private final Counter storeHits;
+    /**
+     * The images that were not in the {@link tech.sbdevelopment.mapreflectionapi.api.ContentStore}, so they were converted
+     */
+    private final Counter storeMisses;
+    /**
+     * The time to load a converted image from the {@link tech.sbdevelopment.mapreflectionapi.api.ContentStore}, in nanoseconds
+     */
+    private final Histogram storeLoadTime;
+    /**
+     * The time to convert a {@link java.awt.image.BufferedImage} to map colors, in nanoseconds
+     */
+    private final Histogram conversionTime;
+    /**
+     * The time spent in the netty handler on outgoing packets, in nanoseconds
+     */
+    private final Histogram handlerWriteTime;
+    /**
+     * The time spent in the netty handler on incoming packets, in nanoseconds
+     */
+    private final Histogram handlerReadTime;
+
+    private MapMetrics(MetricsRegistry registry) {
+        this.registry = registry;
+        this.queueLatency = registry.histogram("sender.queue.latency");
+        this.drainTime = registry.histogram("sender.drain.time");
+        this.packetBuildTime = registry.histogram("sender.packet.build.time");
+        this.packetSendTime = registry.histogram("sender.packet.send.time");
+        this.packetsSent = registry.counter("sender.packets");
+        this.bytesSent = registry.counter("sender.bytes");
+        this.framesCoalesced = registry.counter("sender.frames.coalesced");
+        this.framesDropped = registry.counter("sender.frames.dropped");
+        this.idAllocations = registry.counter("manager.ids.allocated");
+        this.dedupeHits = registry.counter("manager.dedupe.hits");
+        this.dedupeMisses = registry.counter("manager.dedupe.misses");
+        this.wrappersDetached = registry.counter("manager.wrappers.detached");
+        this.wrappersExpired = registry.counter("manager.wrappers.expired");
+        this.contentSpilled = registry.counter("storage.spilled");
+        this.contentRehydrated = registry.counter("storage.rehydrated");
+        this.rehydrateTime = registry.histogram("storage.rehydrate.time");
+        this.idleCompressedInput = registry.counter("storage.idle.input");
+        this.idleCompressedOutput = registry.counter("storage.idle.output");
+        this.storeHits = registry.counter("store.hits");
+        this.storeMisses = registry.counter("store.misses");
+        this.storeLoadTime = registry.histogram("store.load.time");
+        this.conversionTime = registry.histogram("image.conversion.time");
+        this.handlerWriteTime = registry.histogram("netty.write.time");
+        this.handlerReadTime = registry.histogram("netty.read.time");
+
+        registry.gauge("sender.queue.size", MapSender::getQueueSize);
+    }
+
+    /**
+     * Get the metrics of the map delivery
+     *
+     * @return The {@link MapMetrics}
+     */
+    public static MapMetrics get() {
+        return instance;
+    }
+
+    /**
+     * Collect the metrics in another registry from now on
+     * The values collected so far are not moved to the new registry.
+     *
+     * @param registry The {@link MetricsRegistry} to use
+     */
+    public static void setRegistry(MetricsRegistry registry) {
+        instance = new MapMetrics(registry);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link MetricsRegistry} creates the metrics of the API.
+ * Implement it to collect the metrics in another metrics library, and set it with {@link MapMetrics#setRegistry(MetricsRegistry)}.
+ */
+public interface MetricsRegistry {
+    /**
+     * Get or create a counter
+     *
+     * @param name The name of the counter
+     * @return The counter
+     */
+    Counter counter(String name);
+
+    /**
+     * Get or create a histogram
+     *
+     * @param name The name of the histogram
+     * @return The histogram
+     */
+    Histogram histogram(String name);
+
+    /**
+     * Register a gauge, which is read when the metrics are collected
+     *
+     * @param name     The name of the gauge
+     * @param supplier The supplier of the current value
+     */
+    void gauge(String name, LongSupplier supplier);
+}
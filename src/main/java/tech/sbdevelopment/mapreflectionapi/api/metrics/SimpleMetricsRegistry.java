@@ -0,0 +1,208 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The {@link SimpleMetricsRegistry} keeps the metrics in memory, so they can be shown with <code>/mapmanager stats</code>.
+ * Histograms use buckets of powers of two, so their percentiles are rounded up to the next power of two.
+ */
+public class SimpleMetricsRegistry implements MetricsRegistry {
+    private final Map<String, SimpleCounter> counters = new ConcurrentHashMap<>();
+    private final Map<String, SimpleHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new SimpleCounter());
+    }
+
+    @Override
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new SimpleHistogram());
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * Get the current values of the counters
+     *
+     * @return The values by name, sorted by name
+     */
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum.sum()));
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Get the current values of the gauges
+     *
+     * @return The values by name, sorted by name
+     */
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Get a snapshot of the histograms
+     *
+     * @return The snapshots by name, sorted by name
+     */
+    public Map<String, HistogramSnapshot> getHistograms() {
+        Map<String, HistogramSnapshot> values = new TreeMap<>();
+        histograms.forEach((name, histogram) -> values.put(name, histogram.snapshot()));
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Reset all counters and histograms, the gauges are kept
+     */
+    public void reset() {
+        counters.values().forEach(counter -> counter.sum.reset());
+        histograms.values().forEach(SimpleHistogram::reset);
+    }
+
+    private static final class SimpleCounter implements Counter {
+        private final LongAdder sum = new LongAdder();
+
+        @Override
+        public void add(long amount) {
+            sum.add(amount);
+        }
+    }
+
+    private static final class SimpleHistogram implements Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        @Override
+        public void record(long value) {
+            if (value < 0) value = 0;
+            //Bucket n holds the values below 2^n
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+            sum.add(value);
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        private HistogramSnapshot snapshot() {
+            //The count is the sum of the buckets, so it always matches them
+            long[] counts = new long[buckets.length()];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            return new HistogramSnapshot(total, sum.sum(), max.get(), counts);
+        }
+
+        private void reset() {
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+            sum.reset();
+            max.set(0);
+        }
+    }
+
+    /**
+     * A {@link HistogramSnapshot} contains the values of a histogram at one moment.
+     */
+    public static final class HistogramSnapshot {
+        private final long count;
+        private final long sum;
+        private final long max;
+        private final long[] buckets;
+
+        private HistogramSnapshot(long count, long sum, long max, long[] buckets) {
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+            this.buckets = buckets;
+        }
+
+        /**
+         * Get the amount of recorded values
+         *
+         * @return The count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the sum of the recorded values
+         *
+         * @return The sum
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * Get the mean of the recorded values
+         *
+         * @return The mean, or <code>0</code> if nothing was recorded
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Get the largest recorded value
+         *
+         * @return The maximum
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Get a percentile of the recorded values
+         *
+         * @param percentile The percentile, between 0 and 100
+         * @return The upper bound of the bucket that contains the percentile, at most the maximum
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) return 0;
+
+            long rank = (long) Math.ceil(percentile / 100 * count);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) return Math.min(max, i == 0 ? 0 : (1L << i) - 1);
+            }
+            return max;
+        }
+    }
+}
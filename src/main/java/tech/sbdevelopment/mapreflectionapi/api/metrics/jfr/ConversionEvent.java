@@ -0,0 +1,54 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api.metrics.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * The {@link ConversionEvent} is recorded when an image is converted to map colors.
+ */
+@Name("tech.sbdevelopment.mapreflectionapi.Conversion")
+@Label("Map Image Conversion")
+@Category("MapReflectionAPI")
+@StackTrace(false)
+public class ConversionEvent extends Event {
+    @Label("Width")
+    private int width;
+    @Label("Height")
+    private int height;
+    @Label("Indexed")
+    @Description("If the image had a palette, so only the palette was converted")
+    private boolean indexed;
+
+    /**
+     * Commit the event if it is recorded
+     *
+     * @param width   The width of the image
+     * @param height  The height of the image
+     * @param indexed If the image had a palette
+     */
+    public void complete(int width, int height, boolean indexed) {
+        if (!shouldCommit()) return;
+
+        this.width = width;
+        this.height = height;
+        this.indexed = indexed;
+        commit();
+    }
+}
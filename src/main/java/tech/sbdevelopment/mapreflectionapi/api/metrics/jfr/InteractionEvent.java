@@ -0,0 +1,59 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api.metrics.jfr;
+
+import jdk.jfr.*;
+import org.bukkit.entity.Player;
+
+/**
+ * The {@link InteractionEvent} is recorded when an interaction with a map is turned into a Bukkit event.
+ */
+@Name("tech.sbdevelopment.mapreflectionapi.Interaction")
+@Label("Map Interaction Dispatch")
+@Category("MapReflectionAPI")
+@StackTrace(false)
+public class InteractionEvent extends Event {
+    @Label("Player")
+    private String player;
+    @Label("Type")
+    private String type;
+    @Label("Target")
+    @Description("The entity ID of the item frame, or the inventory slot")
+    private int target;
+    @Label("Cancelled")
+    private boolean cancelled;
+
+    /**
+     * Commit the event if it is recorded
+     *
+     * @param player    The {@link Player} that interacted
+     * @param type      The type of interaction
+     * @param target    The entity ID of the item frame, or the inventory slot
+     * @param cancelled If the packet was cancelled
+     */
+    public void complete(Player player, String type, int target, boolean cancelled) {
+        if (!shouldCommit()) return;
+
+        this.player = player.getName();
+        this.type = type;
+        this.target = target;
+        this.cancelled = cancelled;
+        commit();
+    }
+}
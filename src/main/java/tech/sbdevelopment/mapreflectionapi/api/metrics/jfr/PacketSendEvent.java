@@ -0,0 +1,66 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api.metrics.jfr;
+
+import jdk.jfr.*;
+import org.bukkit.entity.Player;
+
+/**
+ * The {@link PacketSendEvent} is recorded when a map packet is built and sent to a player.
+ */
+@Name("tech.sbdevelopment.mapreflectionapi.PacketSend")
+@Label("Map Packet Send")
+@Category("MapReflectionAPI")
+@StackTrace(false)
+public class PacketSendEvent extends Event {
+    @Label("Player")
+    private String player;
+    @Label("Map ID")
+    private int mapId;
+    @Label("X")
+    private int x;
+    @Label("Y")
+    private int y;
+    @Label("Width")
+    private int width;
+    @Label("Height")
+    private int height;
+
+    /**
+     * Commit the event if it is recorded
+     *
+     * @param player The {@link Player} the packet was sent to
+     * @param mapId  The ID of the map
+     * @param x      The x position of the region
+     * @param y      The y position of the region
+     * @param width  The width of the region
+     * @param height The height of the region
+     */
+    public void complete(Player player, int mapId, int x, int y, int width, int height) {
+        if (!shouldCommit()) return;
+
+        this.player = player.getName();
+        this.mapId = mapId;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        commit();
+    }
+}
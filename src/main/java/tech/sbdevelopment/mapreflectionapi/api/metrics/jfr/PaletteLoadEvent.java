@@ -0,0 +1,50 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api.metrics.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * The {@link PaletteLoadEvent} is recorded for every phase of loading the color palette.
+ */
+@Name("tech.sbdevelopment.mapreflectionapi.PaletteLoad")
+@Label("Map Palette Load")
+@Category("MapReflectionAPI")
+@StackTrace(false)
+public class PaletteLoadEvent extends Event {
+    @Label("Phase")
+    private String phase;
+    @Label("Success")
+    @Description("If the phase did its work, for example if the cache could be used")
+    private boolean success;
+
+    /**
+     * Commit the event if it is recorded
+     *
+     * @param phase   The name of the phase
+     * @param success If the phase did its work
+     */
+    public void complete(String phase, boolean success) {
+        if (!shouldCommit()) return;
+
+        this.phase = phase;
+        this.success = success;
+        commit();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api.metrics.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * The {@link QueueDrainEvent} is recorded every time the send queue is processed.
+ */
+@Name("tech.sbdevelopment.mapreflectionapi.QueueDrain")
+@Label("Map Queue Drain")
+@Category("MapReflectionAPI")
+@StackTrace(false)
+public class QueueDrainEvent extends Event {
+    @Label("Maps Sent")
+    private int maps;
+    @Label("Bytes Sent")
+    @DataAmount
+    private long bytes;
+    @Label("Maps Remaining")
+    private int remaining;
+
+    /**
+     * Commit the event if it is recorded
+     *
+     * @param maps      The amount of maps that were sent
+     * @param bytes     The amount of map data that was sent
+     * @param remaining The amount of maps left in the queue
+     */
+    public void complete(int maps, long bytes, int remaining) {
+        if (!shouldCommit()) return;
+
+        this.maps = maps;
+        this.bytes = bytes;
+        this.remaining = remaining;
+        commit();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The {@link CompressedContentSpill} keeps the content compressed in the heap.
+ * Map content often has large areas of the same color, so it usually compresses to a fraction of its size.
+ */
+public class CompressedContentSpill implements ContentSpill {
+    @Override
+    public SpilledContent spill(byte[] data) {
+        //Only the length is kept, so the original bytes can be collected
+        byte[] compressed = compress(data);
+        int length = data.length;
+        return new SpilledContent() {
+            @Override
+            public byte[] load() throws IOException {
+                return decompress(compressed, length);
+            }
+
+            @Override
+            public void discard() {
+            }
+
+            @Override
+            public long getMemoryUsage() {
+                return compressed.length;
+            }
+        };
+    }
+
+    /**
+     * Compress bytes with the fastest deflate level
+     *
+     * @param data The bytes to compress
+     * @return The compressed bytes
+     */
+    static byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, data.length / 8));
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompress bytes that were compressed by {@link #compress(byte[])}
+     *
+     * @param compressed The compressed bytes
+     * @param length     The length of the original bytes
+     * @return The original bytes
+     * @throws IOException If the bytes are corrupt
+     */
+    static byte[] decompress(byte[] compressed, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] data = new byte[length];
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                int count = inflater.inflate(data, read, length - read);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                read += count;
+            }
+            if (read != length) throw new IOException("The compressed content is corrupt!");
+            return data;
+        } catch (DataFormatException ex) {
+            throw new IOException("The compressed content is corrupt!", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+}
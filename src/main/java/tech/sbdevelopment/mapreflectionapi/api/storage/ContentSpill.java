@@ -0,0 +1,61 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api.storage;
+
+import java.io.IOException;
+
+/**
+ * A {@link ContentSpill} moves the content of a map out of the heap, until it is needed again.
+ */
+public interface ContentSpill {
+    /**
+     * Move content out of the heap
+     *
+     * @param data The bytes of the content
+     * @return The {@link SpilledContent} to load the bytes again
+     * @throws IOException If the content could not be stored
+     */
+    SpilledContent spill(byte[] data) throws IOException;
+
+    /**
+     * The available spill implementations
+     */
+    enum Type {
+        /**
+         * Keep the content compressed in the heap, see {@link CompressedContentSpill}
+         */
+        COMPRESS,
+        /**
+         * Keep the content run-length encoded in the heap, see {@link RleContentSpill}
+         */
+        RLE,
+        /**
+         * Write the content compressed to the disk, see {@link DiskContentSpill}
+         */
+        DISK,
+        /**
+         * Keep the content in direct memory outside the heap, see {@link OffHeapContentSpill}
+         */
+        OFF_HEAP,
+        /**
+         * Keep the content in a memory-mapped file, see {@link OffHeapContentSpill}
+         */
+        MAPPED
+    }
+}
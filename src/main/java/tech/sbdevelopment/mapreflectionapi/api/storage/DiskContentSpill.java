@@ -0,0 +1,74 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link DiskContentSpill} writes the content compressed to files in a folder.
+ * The files only live as long as the server runs, so the folder is cleared when the spill is created.
+ */
+public class DiskContentSpill implements ContentSpill {
+    private final File folder;
+    private final AtomicLong nextId = new AtomicLong();
+
+    /**
+     * Create a spill that writes to a folder
+     *
+     * @param folder The folder to write the files to, its current files are removed
+     */
+    public DiskContentSpill(File folder) {
+        this.folder = folder;
+
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(".bin")) file.delete();
+            }
+        }
+    }
+
+    @Override
+    public SpilledContent spill(byte[] data) throws IOException {
+        if (!folder.isDirectory() && !folder.mkdirs()) throw new IOException("Can't create the folder " + folder + "!");
+
+        File file = new File(folder, nextId.incrementAndGet() + ".bin");
+        Files.write(file.toPath(), CompressedContentSpill.compress(data));
+        int length = data.length;
+        return new SpilledContent() {
+            @Override
+            public byte[] load() throws IOException {
+                return CompressedContentSpill.decompress(Files.readAllBytes(file.toPath()), length);
+            }
+
+            @Override
+            public void discard() {
+                file.delete();
+            }
+
+            @Override
+            public long getMemoryUsage() {
+                return 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The {@link OffHeapContentSpill} keeps the content outside the heap, in slabs of direct memory or of a memory-mapped file.
+ * The slabs are split into slots of 16 KiB (one map), content is stored in as many free slots as it needs.
+ * The garbage collector only sees the few slab objects, instead of one array for every map.
+ */
+public class OffHeapContentSpill implements ContentSpill {
+    private static final int SLOT_SIZE = 128 * 128;
+    private static final int SLOTS_PER_SLAB = 256; //4 MiB per slab
+
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private final RandomAccessFile file;
+    private int[] freeSlots = new int[SLOTS_PER_SLAB];
+    private int freeCount = 0;
+
+    /**
+     * Create a spill that uses direct memory
+     */
+    public OffHeapContentSpill() {
+        this.file = null;
+    }
+
+    /**
+     * Create a spill that uses a memory-mapped file
+     * The operating system can page the file out, so the content doesn't have to fit in memory.
+     *
+     * @param file The file to map, its current content is removed
+     * @throws IOException If the file can't be opened
+     */
+    public OffHeapContentSpill(File file) throws IOException {
+        File folder = file.getParentFile();
+        if (folder != null && !folder.isDirectory() && !folder.mkdirs()) throw new IOException("Can't create the folder " + folder + "!");
+
+        this.file = new RandomAccessFile(file, "rw");
+        this.file.setLength(0);
+    }
+
+    @Override
+    public SpilledContent spill(byte[] data) throws IOException {
+        int[] slots = allocate((data.length + SLOT_SIZE - 1) / SLOT_SIZE);
+        for (int i = 0; i < slots.length; i++) {
+            int offset = i * SLOT_SIZE;
+            slot(slots[i]).put(data, offset, Math.min(SLOT_SIZE, data.length - offset));
+        }
+
+        int length = data.length;
+        return new SpilledContent() {
+            private boolean discarded = false;
+
+            @Override
+            public byte[] load() {
+                byte[] data = new byte[length];
+                for (int i = 0; i < slots.length; i++) {
+                    int offset = i * SLOT_SIZE;
+                    slot(slots[i]).get(data, offset, Math.min(SLOT_SIZE, length - offset));
+                }
+                return data;
+            }
+
+            @Override
+            public void discard() {
+                synchronized (this) {
+                    if (discarded) return;
+                    discarded = true;
+                }
+                free(slots);
+            }
+
+            @Override
+            public long getMemoryUsage() {
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * Get the memory (or file size) reserved for the slabs
+     *
+     * @return The reserved size in bytes
+     */
+    public synchronized long getCapacity() {
+        return (long) slabs.size() * SLOTS_PER_SLAB * SLOT_SIZE;
+    }
+
+    /**
+     * Get the memory (or file size) used by the stored content
+     *
+     * @return The used size in bytes
+     */
+    public synchronized long getUsed() {
+        return ((long) slabs.size() * SLOTS_PER_SLAB - freeCount) * SLOT_SIZE;
+    }
+
+    private synchronized int[] allocate(int count) throws IOException {
+        while (freeCount < count) {
+            addSlab();
+        }
+
+        int[] slots = Arrays.copyOfRange(freeSlots, freeCount - count, freeCount);
+        freeCount -= count;
+        return slots;
+    }
+
+    private synchronized void free(int[] slots) {
+        if (freeCount + slots.length > freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(freeSlots.length * 2, freeCount + slots.length));
+        }
+        System.arraycopy(slots, 0, freeSlots, freeCount, slots.length);
+        freeCount += slots.length;
+    }
+
+    private void addSlab() throws IOException {
+        int slab = slabs.size();
+        int slabSize = SLOTS_PER_SLAB * SLOT_SIZE;
+        if (file != null) {
+            long position = (long) slab * slabSize;
+            file.setLength(position + slabSize);
+            slabs.add(file.getChannel().map(FileChannel.MapMode.READ_WRITE, position, slabSize));
+        } else {
+            slabs.add(ByteBuffer.allocateDirect(slabSize));
+        }
+
+        if (freeCount + SLOTS_PER_SLAB > freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(freeSlots.length * 2, freeCount + SLOTS_PER_SLAB));
+        }
+        //Hand out the slots from the start of the slab first
+        for (int i = SLOTS_PER_SLAB - 1; i >= 0; i--) {
+            freeSlots[freeCount++] = slab * SLOTS_PER_SLAB + i;
+        }
+    }
+
+    /**
+     * Get a buffer positioned at the start of a slot
+     * Every call returns a new view, so threads don't share a position.
+     *
+     * @param slot The index of the slot
+     * @return The buffer
+     */
+    private ByteBuffer slot(int slot) {
+        ByteBuffer slab;
+        synchronized (this) {
+            slab = slabs.get(slot / SLOTS_PER_SLAB);
+        }
+        ByteBuffer view = slab.duplicate();
+        view.position((slot % SLOTS_PER_SLAB) * SLOT_SIZE);
+        return view;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api.storage;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The {@link RleContentSpill} keeps the content run-length encoded in the heap.
+ * Map content is made of palette bytes with long runs of the same color, so it encodes well and decodes in a few microseconds.
+ * The content is encoded into a shared scratch buffer first, so only the encoded bytes are allocated.
+ * <p>
+ * Every run starts with a control byte <code>n</code>: if it is 0 to 127, <code>n + 1</code> literal bytes follow,
+ * otherwise the next byte is repeated <code>1 - n</code> times. Only repeats of at least 3 bytes are encoded as a repeat.
+ */
+public class RleContentSpill implements ContentSpill {
+    private static final int MAX_RUN = 128;
+    private byte[] scratch = new byte[0];
+
+    @Override
+    public SpilledContent spill(byte[] data) {
+        byte[] encoded = encode(data);
+        int length = data.length;
+        return new SpilledContent() {
+            @Override
+            public byte[] load() throws IOException {
+                return decode(encoded, length);
+            }
+
+            @Override
+            public void discard() {
+            }
+
+            @Override
+            public long getMemoryUsage() {
+                return encoded.length;
+            }
+        };
+    }
+
+    /**
+     * Run-length encode bytes
+     *
+     * @param data The bytes to encode
+     * @return The encoded bytes
+     */
+    public synchronized byte[] encode(byte[] data) {
+        //Repeats are at least 3 bytes long, so the worst case only adds the control bytes of the literals
+        int maxSize = data.length + data.length / MAX_RUN + 2;
+        if (scratch.length < maxSize) scratch = new byte[maxSize];
+
+        int out = 0;
+        int i = 0;
+        while (i < data.length) {
+            //Count the repeats of the current byte
+            int run = 1;
+            while (i + run < data.length && run < MAX_RUN && data[i + run] == data[i]) run++;
+
+            if (run >= 3) {
+                scratch[out++] = (byte) (1 - run);
+                scratch[out++] = data[i];
+                i += run;
+                continue;
+            }
+
+            //Collect literals until the next repeat
+            int start = i;
+            while (i < data.length && i - start < MAX_RUN && !(i + 2 < data.length && data[i] == data[i + 1] && data[i] == data[i + 2])) i++;
+            scratch[out++] = (byte) (i - start - 1);
+            System.arraycopy(data, start, scratch, out, i - start);
+            out += i - start;
+        }
+        return Arrays.copyOf(scratch, out);
+    }
+
+    /**
+     * Decode bytes that were encoded by {@link #encode(byte[])}
+     *
+     * @param encoded The encoded bytes
+     * @param length  The length of the original bytes
+     * @return The original bytes
+     * @throws IOException If the bytes are corrupt
+     */
+    public static byte[] decode(byte[] encoded, int length) throws IOException {
+        byte[] data = new byte[length];
+        int out = 0;
+        int i = 0;
+        try {
+            while (i < encoded.length) {
+                int control = encoded[i++];
+                if (control >= 0) {
+                    System.arraycopy(encoded, i, data, out, control + 1);
+                    i += control + 1;
+                    out += control + 1;
+                } else {
+                    Arrays.fill(data, out, out + 1 - control, encoded[i++]);
+                    out += 1 - control;
+                }
+            }
+        } catch (IndexOutOfBoundsException ex) {
+            throw new IOException("The encoded content is corrupt!", ex);
+        }
+        if (out != length) throw new IOException("The encoded content is corrupt!");
+        return data;
+    }
+
+    /**
+     * Decode the remaining bytes of a buffer that were encoded by {@link #encode(byte[])}
+     * This reads memory-mapped files without copying the encoded bytes to the heap first.
+     *
+     * @param encoded The buffer with the encoded bytes
+     * @param length  The length of the original bytes
+     * @return The original bytes
+     * @throws IOException If the bytes are corrupt
+     */
+    public static byte[] decode(ByteBuffer encoded, int length) throws IOException {
+        byte[] data = new byte[length];
+        int out = 0;
+        try {
+            while (encoded.hasRemaining()) {
+                int control = encoded.get();
+                if (control >= 0) {
+                    encoded.get(data, out, control + 1);
+                    out += control + 1;
+                } else {
+                    Arrays.fill(data, out, out + 1 - control, encoded.get());
+                    out += 1 - control;
+                }
+            }
+        } catch (IndexOutOfBoundsException | BufferUnderflowException ex) {
+            throw new IOException("The encoded content is corrupt!", ex);
+        }
+        if (out != length) throw new IOException("The encoded content is corrupt!");
+        return data;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tech.sbdevelopment.mapreflectionapi.api.storage;
+
+import java.io.IOException;
+
+/**
+ * A {@link SpilledContent} is the content of a map that was moved out of the heap by a {@link ContentSpill}.
+ */
+public interface SpilledContent {
+    /**
+     * Load the bytes of the content again
+     *
+     * @return The bytes of the content
+     * @throws IOException If the content could not be loaded
+     */
+    byte[] load() throws IOException;
+
+    /**
+     * Remove the stored content, after which it can't be loaded anymore
+     */
+    void discard();
+
+    /**
+     * Get the heap memory the stored content still uses
+     *
+     * @return The memory usage in bytes
+     */
+    long getMemoryUsage();
+}
@@ -15,44 +15,238 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <https://www.gnu.org/licenses/>.
  */
-
 package tech.sbdevelopment.mapreflectionapi.cmd;
 
+import com.bergerkiller.bukkit.common.map.MapColorPalette;
+import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabExecutor;
+import org.bukkit.entity.Player;
 import org.bukkit.util.StringUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import tech.sbdevelopment.mapreflectionapi.MapReflectionAPI;
+import tech.sbdevelopment.mapreflectionapi.api.ContentBudget;
+import tech.sbdevelopment.mapreflectionapi.api.MapManager;
+import tech.sbdevelopment.mapreflectionapi.api.MapSender;
+import tech.sbdevelopment.mapreflectionapi.api.MapWrapper;
+import tech.sbdevelopment.mapreflectionapi.api.metrics.MapMetrics;
+import tech.sbdevelopment.mapreflectionapi.api.metrics.SimpleMetricsRegistry;
+import tech.sbdevelopment.mapreflectionapi.api.metrics.SimpleMetricsRegistry.HistogramSnapshot;
+import tech.sbdevelopment.mapreflectionapi.api.storage.OffHeapContentSpill;
 import tech.sbdevelopment.mapreflectionapi.managers.Configuration;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.stream.Collectors;
 
 public class MapManagerCMD implements TabExecutor {
+    private static final List<String> SUBCOMMANDS = List.of("reload", "stats", "profile");
+    private static final int MAX_PROFILE_SECONDS = 300;
+    private boolean profiling = false;
+
     @Override
     public boolean onCommand(@NotNull CommandSender sender, @NotNull Command cmd, @NotNull String label, @NotNull String[] args) {
-        if (!sender.hasPermission("mapmanager.reload")) {
-            sender.sendMessage(ChatColor.RED + "You don't have the permissions to use this command!");
-            return false;
-        }
+        if (args.length >= 1 && SUBCOMMANDS.contains(args[0].toLowerCase())) {
+            if (!sender.hasPermission("mapmanager." + args[0].toLowerCase())) {
+                sender.sendMessage(ChatColor.RED + "You don't have the permissions to use this command!");
+                return false;
+            }
 
-        if (args.length == 1 && args[0].equalsIgnoreCase("reload")) {
-            Configuration.getInstance().reload();
+            if (args.length == 1 && args[0].equalsIgnoreCase("reload")) {
+                Configuration.getInstance().reload();
 
-            sender.sendMessage(ChatColor.GREEN + "The configuration has been reloaded!");
-            return true;
+                sender.sendMessage(ChatColor.GREEN + "The configuration has been reloaded!");
+                return true;
+            } else if (args.length <= 2 && args[0].equalsIgnoreCase("stats")) {
+                Integer top = args.length == 2 ? parseNumber(args[1], 1, 100) : Integer.valueOf(5);
+                if (top != null) {
+                    sendStats(sender, top);
+                    return true;
+                }
+            } else if (args.length == 2 && args[0].equalsIgnoreCase("profile")) {
+                Integer seconds = parseNumber(args[1], 1, MAX_PROFILE_SECONDS);
+                if (seconds != null) {
+                    startProfile(sender, seconds);
+                    return true;
+                }
+            }
         }
 
         sender.sendMessage(ChatColor.GREEN + "Usage: " + ChatColor.WHITE + "/mapmanager reload");
+        sender.sendMessage(ChatColor.GREEN + "Usage: " + ChatColor.WHITE + "/mapmanager stats [players]");
+        sender.sendMessage(ChatColor.GREEN + "Usage: " + ChatColor.WHITE + "/mapmanager profile <1-" + MAX_PROFILE_SECONDS + " seconds>");
         return false;
     }
 
+    private void sendStats(CommandSender sender, int top) {
+        MapManager manager = MapReflectionAPI.getMapManager();
+        List<MapWrapper> maps = manager.getManagedMaps();
+        long largest = maps.stream().mapToLong(MapWrapper::getMemoryUsage).max().orElse(0);
+        long memory = manager.getMemoryUsage();
+        sender.sendMessage(ChatColor.GREEN + "Managed maps: " + ChatColor.WHITE + maps.size() + " using " + formatBytes(memory)
+                + " (average " + formatBytes(maps.isEmpty() ? 0 : memory / maps.size()) + ", largest " + formatBytes(largest) + "), "
+                + manager.getDetachedMapsCount() + " detached maps without viewers");
+        ContentBudget budget = manager.getContentBudget();
+        sender.sendMessage(ChatColor.GREEN + "Memory budget: " + ChatColor.WHITE + (budget.getBudget() > 0 ? formatBytes(budget.getResidentBytes()) + " of " + formatBytes(budget.getBudget()) : "no limit")
+                + ", " + budget.getSpilledCount() + " maps moved out (" + formatBytes(budget.getSpilledMemoryUsage()) + " in memory)");
+        if (budget.getBudget() > 0 && budget.getSpill() instanceof OffHeapContentSpill) {
+            OffHeapContentSpill offHeap = (OffHeapContentSpill) budget.getSpill();
+            sender.sendMessage(ChatColor.GREEN + "Off-heap: " + ChatColor.WHITE + formatBytes(offHeap.getUsed()) + " of " + formatBytes(offHeap.getCapacity()) + " used");
+        }
+        sender.sendMessage(ChatColor.GREEN + "Palette: " + ChatColor.WHITE + (MapColorPalette.isLoaded() ? formatBytes(MapColorPalette.getMemoryUsage()) : "loading..."));
+
+        long rate = MapSender.getSendRate();
+        sender.sendMessage(ChatColor.GREEN + "Send rate: " + ChatColor.WHITE + formatBytes(rate) + "/s of " + formatBytes(MapSender.getBudget())
+                + "/s (" + String.format("%.1f%%", 100.0 * rate / MapSender.getBudget()) + ")");
+
+        Map<Player, Long> queued = MapSender.getQueuedBytes();
+        sender.sendMessage(ChatColor.GREEN + "Queue: " + ChatColor.WHITE + MapSender.getQueueSize() + " maps, "
+                + formatBytes(queued.values().stream().mapToLong(Long::longValue).sum()) + " for " + queued.size() + " players");
+        queued.entrySet().stream()
+                .sorted(Map.Entry.<Player, Long>comparingByValue().reversed())
+                .limit(top)
+                .forEach(entry -> sender.sendMessage(ChatColor.GREEN + " - " + entry.getKey().getName() + ": " + ChatColor.WHITE + formatBytes(entry.getValue())));
+
+        if (!(MapMetrics.get().getRegistry() instanceof SimpleMetricsRegistry)) {
+            sender.sendMessage(ChatColor.RED + "The metrics are collected by another plugin, so they can't be shown here.");
+            return;
+        }
+        SimpleMetricsRegistry registry = (SimpleMetricsRegistry) MapMetrics.get().getRegistry();
+        Map<String, Long> counters = registry.getCounters();
+
+        long hits = counters.getOrDefault("manager.dedupe.hits", 0L);
+        long misses = counters.getOrDefault("manager.dedupe.misses", 0L);
+        long coalesced = counters.getOrDefault("sender.frames.coalesced", 0L);
+        long packets = counters.getOrDefault("sender.packets", 0L);
+        sender.sendMessage(ChatColor.GREEN + "Dedupe: " + ChatColor.WHITE + formatRatio(hits, hits + misses) + " of the wrapped images reused a map, "
+                + formatRatio(coalesced, coalesced + packets) + " of the frames were already queued");
+
+        long storeHits = counters.getOrDefault("store.hits", 0L);
+        long storeMisses = counters.getOrDefault("store.misses", 0L);
+        if (storeHits + storeMisses > 0) {
+            sender.sendMessage(ChatColor.GREEN + "Store: " + ChatColor.WHITE + formatRatio(storeHits, storeHits + storeMisses)
+                    + " of the converted images were loaded from the store");
+        }
+
+        long idleInput = counters.getOrDefault("storage.idle.input", 0L);
+        long idleOutput = counters.getOrDefault("storage.idle.output", 0L);
+        HistogramSnapshot rehydrate = registry.getHistograms().get("storage.rehydrate.time");
+        if (idleInput > 0 || (rehydrate != null && rehydrate.getCount() > 0)) {
+            long rehydrateTime = rehydrate != null ? rehydrate.getSum() : 0;
+            sender.sendMessage(ChatColor.GREEN + "Compression: " + ChatColor.WHITE + String.format("idle content %s to %s (%.1f:1), loading content again took %.1fus per sent packet",
+                    formatBytes(idleInput), formatBytes(idleOutput), idleOutput == 0 ? 0 : (double) idleInput / idleOutput, packets == 0 ? 0 : rehydrateTime / 1e3 / packets));
+        }
+
+        counters.forEach((name, value) -> sender.sendMessage(ChatColor.GREEN + name + ": " + ChatColor.WHITE + value));
+
+        //The histograms contain nanoseconds, which are shown as milliseconds
+        registry.getHistograms().forEach((name, histogram) -> sender.sendMessage(ChatColor.GREEN + name + ": " + ChatColor.WHITE
+                + String.format("count=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms", histogram.getCount(), histogram.getMean() / 1e6,
+                histogram.getPercentile(50) / 1e6, histogram.getPercentile(99) / 1e6, histogram.getMax() / 1e6)));
+    }
+
+    private void startProfile(CommandSender sender, int seconds) {
+        if (!(MapMetrics.get().getRegistry() instanceof SimpleMetricsRegistry)) {
+            sender.sendMessage(ChatColor.RED + "The metrics are collected by another plugin, so the send pipeline can't be profiled.");
+            return;
+        }
+        if (profiling) {
+            sender.sendMessage(ChatColor.RED + "A profile is already running!");
+            return;
+        }
+        profiling = true;
+
+        SimpleMetricsRegistry registry = (SimpleMetricsRegistry) MapMetrics.get().getRegistry();
+        Map<String, HistogramSnapshot> startHistograms = registry.getHistograms();
+        Map<String, Long> startCounters = registry.getCounters();
+        long start = System.nanoTime();
+
+        sender.sendMessage(ChatColor.GREEN + "Profiling the send pipeline for " + seconds + " seconds...");
+        Bukkit.getScheduler().runTaskLater(MapReflectionAPI.getInstance(), () -> {
+            profiling = false;
+            if (MapMetrics.get().getRegistry() != registry) {
+                sender.sendMessage(ChatColor.RED + "The metrics registry was changed during the profile!");
+                return;
+            }
+            sendProfile(sender, System.nanoTime() - start, startHistograms, startCounters, registry.getHistograms(), registry.getCounters());
+        }, seconds * 20L);
+    }
+
+    private void sendProfile(CommandSender sender, long wallTime, Map<String, HistogramSnapshot> startHistograms, Map<String, Long> startCounters,
+                             Map<String, HistogramSnapshot> endHistograms, Map<String, Long> endCounters) {
+        Map<String, Long> times = new HashMap<>();
+        Map<String, Long> counts = new HashMap<>();
+        endHistograms.forEach((name, end) -> {
+            HistogramSnapshot begin = startHistograms.get(name);
+            times.put(name, end.getSum() - (begin != null ? begin.getSum() : 0));
+            counts.put(name, end.getCount() - (begin != null ? begin.getCount() : 0));
+        });
+        double seconds = wallTime / 1e9;
+
+        sender.sendMessage(ChatColor.GREEN + String.format("Profile of %.1f seconds:", seconds));
+
+        //The send queue runs on the main thread, building and sending the packets is part of it
+        long drain = times.getOrDefault("sender.drain.time", 0L);
+        long build = times.getOrDefault("sender.packet.build.time", 0L);
+        long send = times.getOrDefault("sender.packet.send.time", 0L);
+        sender.sendMessage(ChatColor.GREEN + "Main thread: " + ChatColor.WHITE + String.format("%.1fms in the send queue (%.2fms per tick, %.1f%% of the time)",
+                drain / 1e6, drain / 1e6 / (seconds * 20), 100.0 * drain / wallTime));
+        if (drain > 0) {
+            sender.sendMessage(ChatColor.GREEN + " - " + ChatColor.WHITE + String.format("building packets %s, sending packets %s, other %s",
+                    formatRatio(build, drain), formatRatio(send, drain), formatRatio(Math.max(0, drain - build - send), drain)));
+        }
+
+        long packets = endCounters.getOrDefault("sender.packets", 0L) - startCounters.getOrDefault("sender.packets", 0L);
+        long bytes = endCounters.getOrDefault("sender.bytes", 0L) - startCounters.getOrDefault("sender.bytes", 0L);
+        sender.sendMessage(ChatColor.GREEN + "Sent: " + ChatColor.WHITE + String.format("%d packets (%.1f/s), %s/s of %s/s", packets, packets / seconds,
+                formatBytes((long) (bytes / seconds)), formatBytes(MapSender.getBudget())));
+
+        long latency = times.getOrDefault("sender.queue.latency", 0L);
+        long latencyCount = counts.getOrDefault("sender.queue.latency", 0L);
+        sender.sendMessage(ChatColor.GREEN + "Queue latency: " + ChatColor.WHITE + String.format("%.1fms on average", latencyCount == 0 ? 0 : latency / 1e6 / latencyCount));
+
+        //The other timings, which can also run on other threads
+        times.entrySet().stream()
+                .filter(entry -> entry.getKey().endsWith(".time") && entry.getValue() > 0)
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> {
+                    long count = counts.get(entry.getKey());
+                    sender.sendMessage(ChatColor.GREEN + " - " + entry.getKey() + ": " + ChatColor.WHITE + String.format("%.1fms (%.1f%% of the time), %d times, %.1fus on average",
+                            entry.getValue() / 1e6, 100.0 * entry.getValue() / wallTime, count, entry.getValue() / 1e3 / count));
+                });
+    }
+
+    private Integer parseNumber(String value, int min, int max) {
+        try {
+            int number = Integer.parseInt(value);
+            return number >= min && number <= max ? number : null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KiB", bytes / 1024.0);
+        return String.format("%.1f MiB", bytes / (1024.0 * 1024));
+    }
+
+    private String formatRatio(long part, long total) {
+        return total == 0 ? "0%" : String.format("%.1f%%", 100.0 * part / total);
+    }
+
     @Nullable
     @Override
     public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command cmd, @NotNull String label, @NotNull String[] args) {
-        if (args.length == 1) return StringUtil.copyPartialMatches(args[0], List.of("reload"), new ArrayList<>());
+        if (args.length == 1) {
+            List<String> allowed = SUBCOMMANDS.stream().filter(sub -> sender.hasPermission("mapmanager." + sub)).collect(Collectors.toList());
+            return StringUtil.copyPartialMatches(args[0], allowed, new ArrayList<>());
+        }
+        if (args.length == 2 && args[0].equalsIgnoreCase("profile") && sender.hasPermission("mapmanager.profile")) {
+            return StringUtil.copyPartialMatches(args[1], List.of("10", "30", "60"), new ArrayList<>());
+        }
         return new ArrayList<>();
     }
 }
@@ -18,10 +18,14 @@
 
 package tech.sbdevelopment.mapreflectionapi.managers;
 
+import com.bergerkiller.bukkit.common.map.color.MapColorLookup;
 import lombok.Getter;
 import org.bukkit.plugin.java.JavaPlugin;
+import tech.sbdevelopment.mapreflectionapi.api.storage.ContentSpill;
 import tech.sbdevelopment.mapreflectionapi.utils.YamlFile;
 
+import java.util.Locale;
+
 public class Configuration {
     private static Configuration instance;
     private final YamlFile file;
@@ -31,6 +35,42 @@ public class Configuration {
     @Getter
     private boolean imageCache = true;
     @Getter
+    private boolean lodEnabled = false;
+    @Getter
+    private int lodDistance = 48;
+    @Getter
+    private int lodHysteresis = 8;
+    @Getter
+    private int lodBlockSize = 2;
+    @Getter
+    private boolean progressiveEnabled = false;
+    @Getter
+    private int progressiveBlockSize = 4;
+    @Getter
+    private int progressivePasses = 4;
+    @Getter
+    private boolean palettePerceptual = false;
+    @Getter
+    private MapColorLookup.Type paletteLookup = MapColorLookup.Type.FULL;
+    @Getter
+    private int paletteReducedBits = 6;
+    @Getter
+    private boolean paletteReducedRefine = true;
+    @Getter
+    private long memoryBudget = 0;
+    @Getter
+    private ContentSpill.Type memorySpill = ContentSpill.Type.DISK;
+    @Getter
+    private int memoryIdleCompression = 0;
+    @Getter
+    private int lifecycleDetach = 0;
+    @Getter
+    private int lifecycleTtl = 0;
+    @Getter
+    private boolean storeEnabled = false;
+    @Getter
+    private String storeFolder = "store";
+    @Getter
     private boolean updaterCheck = true;
     @Getter
     private boolean updaterDownload = true;
@@ -52,6 +92,32 @@ public class Configuration {
     public void reload() {
         allowVanilla = this.file.getFile().getBoolean("allowVanilla");
         imageCache = this.file.getFile().getBoolean("imageCache");
+        lodEnabled = this.file.getFile().getBoolean("lod.enabled");
+        lodDistance = this.file.getFile().getInt("lod.distance");
+        lodHysteresis = this.file.getFile().getInt("lod.hysteresis");
+        lodBlockSize = Math.max(2, Integer.highestOneBit(this.file.getFile().getInt("lod.blockSize")));
+        progressiveEnabled = this.file.getFile().getBoolean("progressive.enabled");
+        progressiveBlockSize = Math.max(2, Integer.highestOneBit(this.file.getFile().getInt("progressive.blockSize")));
+        progressivePasses = Math.max(1, Math.min(128, this.file.getFile().getInt("progressive.passes")));
+        palettePerceptual = this.file.getFile().getBoolean("palette.perceptual");
+        try {
+            paletteLookup = MapColorLookup.Type.valueOf(this.file.getFile().getString("palette.lookup", "FULL").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            paletteLookup = MapColorLookup.Type.FULL;
+        }
+        paletteReducedBits = Math.max(1, Math.min(8, this.file.getFile().getInt("palette.reducedBits")));
+        paletteReducedRefine = this.file.getFile().getBoolean("palette.reducedRefine");
+        memoryBudget = Math.max(0, this.file.getFile().getLong("memory.budget")) << 20;
+        try {
+            memorySpill = ContentSpill.Type.valueOf(this.file.getFile().getString("memory.spill", "DISK").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            memorySpill = ContentSpill.Type.DISK;
+        }
+        memoryIdleCompression = Math.max(0, this.file.getFile().getInt("memory.idleCompression"));
+        lifecycleDetach = Math.max(0, this.file.getFile().getInt("lifecycle.detach"));
+        lifecycleTtl = Math.max(0, this.file.getFile().getInt("lifecycle.ttl"));
+        storeEnabled = this.file.getFile().getBoolean("store.enabled");
+        storeFolder = this.file.getFile().getString("store.folder", "store");
         updaterCheck = this.file.getFile().getBoolean("updater.check");
         updaterDownload = this.file.getFile().getBoolean("updater.download");
     }
@@ -27,14 +27,15 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.cryptomorin.xseries.reflection.XReflection.getCraftClass;
 import static com.cryptomorin.xseries.reflection.XReflection.getNMSClass;
 
 public class ReflectionUtil {
-    private static final Map<String, Constructor<?>> constructorCache = new HashMap<>();
-    private static final Map<String, Method> methodCache = new HashMap<>();
-    private static final Map<String, Field> fieldCache = new HashMap<>();
+    private static final Map<String, Constructor<?>> constructorCache = new ConcurrentHashMap<>();
+    private static final Map<String, Method> methodCache = new ConcurrentHashMap<>();
+    private static final Map<String, Field> fieldCache = new ConcurrentHashMap<>();
     private static final Class<?> craftWorld = getCraftClass("CraftWorld");
 
     /**
@@ -76,6 +77,15 @@ public class ReflectionUtil {
                 .toArray(Class<?>[]::new);
     }
 
+    private static String paramTypesKey(Object... params) {
+        //Only the types select the constructor or method, so new objects (like the map data) reuse the cached entry
+        StringJoiner key = new StringJoiner(",");
+        for (Object param : params) {
+            key.add(param != null ? param.getClass().getName() : "null");
+        }
+        return key.toString();
+    }
+
     @Nullable
     public static Object getHandle(@NotNull World world) {;
         return callDeclaredMethod(craftWorld, world, "getHandle");
@@ -136,7 +146,7 @@ public class ReflectionUtil {
     @Nullable
     public static Object callConstructor(Class<?> clazz, Object... params) {
         try {
-            String cacheKey = "Constructor:" + clazz.getName() + ":" + Arrays.hashCode(params);
+            String cacheKey = "Constructor:" + clazz.getName() + ":" + paramTypesKey(params);
 
             if (constructorCache.containsKey(cacheKey)) {
                 Constructor<?> cachedConstructor = constructorCache.get(cacheKey);
@@ -157,7 +167,7 @@ public class ReflectionUtil {
     @Nullable
     public static Object callDeclaredConstructor(Class<?> clazz, Object... params) {
         try {
-            String cacheKey = "DeclaredConstructor:" + clazz.getName() + ":" + Arrays.hashCode(params);
+            String cacheKey = "DeclaredConstructor:" + clazz.getName() + ":" + paramTypesKey(params);
 
             if (constructorCache.containsKey(cacheKey)) {
                 Constructor<?> cachedConstructor = constructorCache.get(cacheKey);
@@ -178,7 +188,7 @@ public class ReflectionUtil {
     @Nullable
     public static Object callMethod(Class<?> clazz, String method, Object... params) {
         try {
-            String cacheKey = "Method:" + clazz.getName() + ":" + method + ":" + Arrays.hashCode(params);
+            String cacheKey = "Method:" + clazz.getName() + ":" + method + ":" + paramTypesKey(params);
 
             if (methodCache.containsKey(cacheKey)) {
                 Method cachedMethod = methodCache.get(cacheKey);
@@ -198,7 +208,7 @@ public class ReflectionUtil {
     @Nullable
     public static Object callMethod(Object obj, String method, Object... params) {
         try {
-            String cacheKey = "Method:" + obj.getClass().getName() + ":" + method + ":" + Arrays.hashCode(params);
+            String cacheKey = "Method:" + obj.getClass().getName() + ":" + method + ":" + paramTypesKey(params);
 
             if (methodCache.containsKey(cacheKey)) {
                 Method cachedMethod = methodCache.get(cacheKey);
@@ -218,7 +228,7 @@ public class ReflectionUtil {
     @Nullable
     public static Object callDeclaredMethod(Object obj, String method, Object... params) {
         try {
-            String cacheKey = "DeclaredMethod:" + obj.getClass().getName() + ":" + method + ":" + Arrays.hashCode(params);
+            String cacheKey = "DeclaredMethod:" + obj.getClass().getName() + ":" + method + ":" + paramTypesKey(params);
 
             if (methodCache.containsKey(cacheKey)) {
                 Method cachedMethod = methodCache.get(cacheKey);
@@ -238,7 +248,7 @@ public class ReflectionUtil {
     @Nullable
     public static Object callDeclaredMethod(Class<?> clazz, Object obj, String method, Object... params) {
         try {
-            String cacheKey = "DeclaredMethod:" + clazz.getName() + ":" + method + ":" + Arrays.hashCode(params);
+            String cacheKey = "DeclaredMethod:" + clazz.getName() + ":" + method + ":" + paramTypesKey(params);
 
             if (methodCache.containsKey(cacheKey)) {
                 Method cachedMethod = methodCache.get(cacheKey);
@@ -262,8 +272,8 @@ public class ReflectionUtil {
             if (fieldCache.containsKey(cacheKey)) {
                 return true;
             } else {
-                packet.getClass().getDeclaredField(field);
-                fieldCache.put(cacheKey, null);
+                Field f = packet.getClass().getDeclaredField(field);
+                fieldCache.put(cacheKey, f);
                 return true;
             }
         } catch (NoSuchFieldException ex) {
@@ -0,0 +1,115 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.bergerkiller.bukkit.common.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BitInputStreamTest {
+    @Test
+    void readsLikeBitByBit() throws IOException {
+        Random random = new Random(1);
+        //More than the 64 KiB block, so the block is refilled while bits are left in the accumulator
+        byte[] data = new byte[200_000];
+        random.nextBytes(data);
+
+        try (BitInputStream stream = new BitInputStream(new ByteArrayInputStream(data))) {
+            long position = 0;
+            while (true) {
+                int bits = 1 + random.nextInt(32);
+                int expected = readReference(data, position, bits);
+                assertEquals(expected, stream.readBits(bits), "Read of " + bits + " bits at bit " + position + " differs");
+                if (expected == -1) break;
+                position += bits;
+            }
+            assertTrue(position > (data.length - 4) * 8L, "The stream ended at bit " + position);
+        }
+    }
+
+    @Test
+    void shortReads() throws IOException {
+        //A stream that returns at most 3 bytes per read, like a slow network or decompressor
+        Random random = new Random(2);
+        byte[] data = new byte[10_000];
+        random.nextBytes(data);
+        InputStream slow = new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+
+        try (BitInputStream stream = new BitInputStream(slow)) {
+            for (int i = 0; i < data.length; i++) {
+                assertEquals(data[i] & 0xFF, stream.read(), "Byte " + i + " differs");
+            }
+            assertEquals(-1, stream.read());
+        }
+    }
+
+    @Test
+    void endOfStream() throws IOException {
+        try (BitInputStream stream = new BitInputStream(new ByteArrayInputStream(new byte[]{(byte) 0xA5}))) {
+            assertEquals(0x5, stream.readBits(4));
+            //Not enough bits left, the remaining bits can still be read
+            assertEquals(-1, stream.readBits(5));
+            assertEquals(0xA, stream.readBits(4));
+            assertEquals(-1, stream.readBits(1));
+        }
+    }
+
+    @Test
+    void closedStream() throws IOException {
+        ByteArrayInputStream input = new ByteArrayInputStream(new byte[16]);
+        BitInputStream stream = new BitInputStream(input);
+        assertEquals(16, stream.available());
+        assertEquals(0, stream.readBits(12));
+        //The bytes that are buffered already are still available
+        assertTrue(stream.available() >= 14);
+
+        stream.close();
+        assertThrows(IOException.class, stream::read);
+        assertThrows(IOException.class, stream::available);
+    }
+
+    /**
+     * Read bits from a byte array one bit at a time, least significant bit first
+     *
+     * @param data     The bytes
+     * @param position The position of the first bit
+     * @param bits     The amount of bits
+     * @return The value, or -1 if there are not enough bits left
+     */
+    private static int readReference(byte[] data, long position, int bits) {
+        if (position + bits > data.length * 8L) return -1;
+
+        long value = 0;
+        for (int i = 0; i < bits; i++) {
+            long bit = position + i;
+            value |= (long) ((data[(int) (bit >> 3)] >> (bit & 7)) & 1) << i;
+        }
+        return (int) value;
+    }
+}
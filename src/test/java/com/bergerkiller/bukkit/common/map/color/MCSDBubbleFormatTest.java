@@ -0,0 +1,56 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.bergerkiller.bukkit.common.map.color;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MCSDBubbleFormatTest {
+    @ParameterizedTest
+    @ValueSource(strings = {"map_1_12", "map_1_16", "map_1_17"})
+    void parallelSpreadMatchesSequential(String name) throws IOException {
+        MCSDBubbleFormat sequential = read(name, false);
+        MCSDBubbleFormat parallel = read(name, true);
+
+        for (int z = 0; z < 256; z++) {
+            assertArrayEquals(sequential.strands[z], parallel.strands[z], "Strands of layer " + z + " differ");
+        }
+        for (int i = 0; i < 256; i++) {
+            assertEquals(sequential.getColor((byte) i), parallel.getColor((byte) i), "Palette color " + i + " differs");
+        }
+        for (int i = 0; i < (1 << 24); i++) {
+            if (sequential.get(i) != parallel.get(i)) {
+                fail("Color table differs at index " + i + ": " + sequential.get(i) + " != " + parallel.get(i));
+            }
+        }
+    }
+
+    private static MCSDBubbleFormat read(String name, boolean parallel) throws IOException {
+        MCSDBubbleFormat format = new MCSDBubbleFormat();
+        try (InputStream stream = MCSDBubbleFormatTest.class.getResourceAsStream("/com/bergerkiller/bukkit/common/internal/resources/map/" + name + ".bub")) {
+            assertNotNull(stream, "Missing resource " + name);
+            format.readFrom(stream, parallel);
+        }
+        return format;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package tech.sbdevelopment.mapreflectionapi.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArrayImageTest {
+    @Test
+    void subImage() {
+        ArrayImage image = randomImage(new Random(1), 300, 200);
+        Random random = new Random(2);
+        for (int i = 0; i < 1_000; i++) {
+            int x = random.nextInt(image.getWidth()), y = random.nextInt(image.getHeight());
+            int width = 1 + random.nextInt(image.getWidth() - x), height = 1 + random.nextInt(image.getHeight() - y);
+
+            ArrayImage part = image.getSubImage(x, y, width, height);
+            assertEquals(width, part.getWidth());
+            assertEquals(height, part.getHeight());
+            for (int row = 0; row < height; row++) {
+                for (int column = 0; column < width; column++) {
+                    assertEquals(pixel(image, x + column, y + row), pixel(part, column, row), "Pixel " + column + ", " + row + " of part " + i + " differs");
+                }
+            }
+        }
+    }
+
+    @Test
+    void subImageIsACopy() {
+        ArrayImage image = randomImage(new Random(3), 128, 128);
+        ArrayImage copy = image.getSubImage(0, 0, 128, 128);
+        assertNotSame(image.array, copy.array);
+        assertEquals(image, copy);
+
+        copy.array[0]++;
+        assertNotEquals(image.array[0], copy.array[0]);
+    }
+
+    @Test
+    void subImageOutside() {
+        ArrayImage image = new ArrayImage(new byte[256 * 128], 256, 128);
+        assertThrows(IllegalArgumentException.class, () -> image.getSubImage(-1, 0, 10, 10));
+        assertThrows(IllegalArgumentException.class, () -> image.getSubImage(0, -1, 10, 10));
+        assertThrows(IllegalArgumentException.class, () -> image.getSubImage(250, 0, 10, 10));
+        assertThrows(IllegalArgumentException.class, () -> image.getSubImage(0, 120, 10, 10));
+        assertThrows(IllegalArgumentException.class, () -> image.getSubImage(0, 0, 0, 10));
+        assertThrows(IllegalArgumentException.class, () -> image.getSubImage(0, 0, 10, 0));
+    }
+
+    @Test
+    void setSubImage() {
+        Random random = new Random(4);
+        for (int i = 0; i < 500; i++) {
+            ArrayImage image = randomImage(random, 256, 128);
+            ArrayImage original = image.getSubImage(0, 0, 256, 128);
+            int width = 1 + random.nextInt(256), height = 1 + random.nextInt(128);
+            int x = random.nextInt(256 - width + 1), y = random.nextInt(128 - height + 1);
+            ArrayImage part = randomImage(random, width, height);
+
+            image.setSubImage(part, x, y);
+            assertEquals(part, image.getSubImage(x, y, width, height), "Part " + i + " was not written");
+            for (int row = 0; row < 128; row++) {
+                for (int column = 0; column < 256; column++) {
+                    boolean inside = column >= x && column < x + width && row >= y && row < y + height;
+                    if (!inside) {
+                        assertEquals(pixel(original, column, row), pixel(image, column, row), "Pixel " + column + ", " + row + " outside part " + i + " changed");
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void setSubImageOutside() {
+        ArrayImage image = new ArrayImage(new byte[128 * 128]);
+        ArrayImage part = new ArrayImage(new byte[100], 10, 10);
+        assertThrows(IllegalArgumentException.class, () -> image.setSubImage(part, -1, 0));
+        assertThrows(IllegalArgumentException.class, () -> image.setSubImage(part, 0, -1));
+        assertThrows(IllegalArgumentException.class, () -> image.setSubImage(part, 119, 0));
+        assertThrows(IllegalArgumentException.class, () -> image.setSubImage(part, 0, 119));
+    }
+
+    @Test
+    void region() {
+        ArrayImage image = randomImage(new Random(5), 300, 200);
+        Random random = new Random(6);
+        for (int i = 0; i < 1_000; i++) {
+            int x = random.nextInt(image.getWidth()), y = random.nextInt(image.getHeight());
+            int width = 1 + random.nextInt(image.getWidth() - x), height = 1 + random.nextInt(image.getHeight() - y);
+
+            ArrayImage region = image.getRegion(x, y, width, height);
+            assertSame(image.array, region.array);
+            assertEquals(x, region.minX);
+            assertEquals(y, region.minY);
+            assertEquals(width, region.maxX);
+            assertEquals(height, region.maxY);
+            assertArrayEquals(image.getSubImage(x, y, width, height).array, region.getRegionData(), "Data of region " + i + " differs");
+        }
+    }
+
+    @Test
+    void regionSeesChanges() {
+        ArrayImage image = randomImage(new Random(7), 256, 128);
+        ArrayImage region = image.getRegion(10, 20, 30, 40);
+        image.array[(20 + 5) * 256 + 10 + 3]++;
+        assertEquals(image.array[(20 + 5) * 256 + 10 + 3], region.getRegionData()[5 * 30 + 3]);
+    }
+
+    @Test
+    void wholeRegionData() {
+        ArrayImage image = randomImage(new Random(8), 128, 128);
+        assertSame(image.array, image.getRegionData());
+        assertSame(image.array, image.getRegion(0, 0, 128, 128).getRegionData());
+    }
+
+    @Test
+    void regionOutside() {
+        ArrayImage image = new ArrayImage(new byte[256 * 128], 256, 128);
+        assertThrows(IllegalArgumentException.class, () -> image.getRegion(-1, 0, 10, 10));
+        assertThrows(IllegalArgumentException.class, () -> image.getRegion(0, -1, 10, 10));
+        assertThrows(IllegalArgumentException.class, () -> image.getRegion(250, 0, 10, 10));
+        assertThrows(IllegalArgumentException.class, () -> image.getRegion(0, 120, 10, 10));
+        assertThrows(IllegalArgumentException.class, () -> image.getRegion(0, 0, 0, 10));
+    }
+
+    static ArrayImage randomImage(Random random, int width, int height) {
+        byte[] array = new byte[width * height];
+        random.nextBytes(array);
+        return new ArrayImage(array, width, height);
+    }
+
+    static byte pixel(ArrayImage image, int x, int y) {
+        return image.array[y * image.getWidth() + x];
+    }
+}
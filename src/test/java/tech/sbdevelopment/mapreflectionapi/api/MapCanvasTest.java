@@ -0,0 +1,229 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package tech.sbdevelopment.mapreflectionapi.api;
+
+import com.bergerkiller.bukkit.common.map.MapColorPalette;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapCanvasTest {
+    private static final byte BACKGROUND = 4;
+
+    @BeforeAll
+    static void markPaletteLoaded() throws ReflectiveOperationException {
+        //Loading the palette needs a server, the tests only use BlendMode.NONE which doesn't need the blend tables
+        Field loaded = MapColorPalette.class.getDeclaredField("loaded");
+        loaded.setAccessible(true);
+        loaded.set(null, true);
+    }
+
+    @Test
+    void drawImageWithNegativeSourceOffset() {
+        MapCanvas canvas = new MapCanvas(background());
+        ArrayImage source = pattern(10, 10);
+        canvas.drawImage(source, -3, -2, 10, 10, 20, 30, MapCanvas.BlendMode.NONE);
+
+        //The part starts 3 pixels to the right and 2 pixels down, and is cut to the remaining 7x8 pixels
+        assertArrayEquals(new int[]{23, 32, 7, 8}, canvas.getDirtyRegion());
+        for (int y = 0; y < 128; y++) {
+            for (int x = 0; x < 128; x++) {
+                boolean inside = x >= 23 && x < 30 && y >= 32 && y < 40;
+                byte expected = inside ? source.array[(y - 32) * 10 + x - 23] : BACKGROUND;
+                assertEquals(expected, canvas.getPixel(x, y), "Pixel " + x + ", " + y + " differs");
+            }
+        }
+    }
+
+    @Test
+    void drawImageOutsideSource() {
+        MapCanvas canvas = new MapCanvas(background());
+        ArrayImage source = pattern(10, 10);
+        canvas.drawImage(source, 6, 6, 10, 10, 0, 0, MapCanvas.BlendMode.NONE);
+
+        assertArrayEquals(new int[]{0, 0, 4, 4}, canvas.getDirtyRegion());
+        assertEquals(source.array[6 * 10 + 6], canvas.getPixel(0, 0));
+        assertEquals(source.array[9 * 10 + 9], canvas.getPixel(3, 3));
+        assertEquals(BACKGROUND, canvas.getPixel(4, 4));
+    }
+
+    @Test
+    void drawImageClipped() {
+        MapCanvas canvas = new MapCanvas(background());
+        ArrayImage source = pattern(50, 50);
+        canvas.setClip(10, 15, 20, 25);
+        canvas.drawImage(source, -5, -5);
+
+        assertArrayEquals(new int[]{10, 15, 20, 25}, canvas.getDirtyRegion());
+        for (int y = 0; y < 128; y++) {
+            for (int x = 0; x < 128; x++) {
+                boolean inside = x >= 10 && x < 30 && y >= 15 && y < 40;
+                byte expected = inside ? source.array[(y + 5) * 50 + x + 5] : BACKGROUND;
+                assertEquals(expected, canvas.getPixel(x, y), "Pixel " + x + ", " + y + " differs");
+            }
+        }
+    }
+
+    @Test
+    void drawImageSkipsTransparent() {
+        MapCanvas canvas = new MapCanvas(background());
+        ArrayImage source = pattern(4, 4);
+        source.array[5] = MapColorPalette.COLOR_TRANSPARENT;
+        canvas.drawImage(source, 0, 0);
+
+        assertEquals(BACKGROUND, canvas.getPixel(1, 1));
+        assertEquals(source.array[6], canvas.getPixel(2, 1));
+    }
+
+    @Test
+    void fillRectClipped() {
+        MapCanvas canvas = new MapCanvas(background());
+        canvas.setClip(-10, 5, 30, 10);
+        canvas.fillRect(0, 0, 128, 128, (byte) 34);
+
+        assertArrayEquals(new int[]{0, 5, 20, 10}, canvas.getDirtyRegion());
+        assertEquals(34, canvas.getPixel(0, 5));
+        assertEquals(34, canvas.getPixel(19, 14));
+        assertEquals(BACKGROUND, canvas.getPixel(20, 14));
+        assertEquals(BACKGROUND, canvas.getPixel(19, 15));
+        assertEquals(BACKGROUND, canvas.getPixel(0, 4));
+
+        canvas.clearDirty();
+        canvas.fillRect(50, 50, 10, 10, (byte) 34);
+        assertFalse(canvas.isDirty());
+
+        canvas.resetClip();
+        canvas.fillRect(50, 50, 10, 10, (byte) 34);
+        assertArrayEquals(new int[]{50, 50, 10, 10}, canvas.getDirtyRegion());
+    }
+
+    @Test
+    void pixelsOutsideCanvas() {
+        MapCanvas canvas = new MapCanvas(background());
+        canvas.setPixel(-1, 0, (byte) 34);
+        canvas.setPixel(0, 128, (byte) 34);
+        assertFalse(canvas.isDirty());
+        assertEquals(MapColorPalette.COLOR_TRANSPARENT, canvas.getPixel(-1, 0));
+        assertEquals(MapColorPalette.COLOR_TRANSPARENT, canvas.getPixel(128, 0));
+    }
+
+    @Test
+    void flushSendsDirtyRegion() {
+        ArrayImage image = background();
+        MapCanvas canvas = new MapCanvas(image);
+        assertNull(canvas.getDirtyRegion());
+
+        canvas.setPixel(10, 20, (byte) 34);
+        canvas.setPixel(40, 5, (byte) 35);
+        assertArrayEquals(new int[]{10, 5, 31, 16}, canvas.getDirtyRegion());
+
+        RecordingController controller = new RecordingController();
+        canvas.flush(controller);
+        assertEquals(1, controller.updates);
+        assertEquals(10, controller.x);
+        assertEquals(5, controller.y);
+        assertEquals(canvas.getImage().getSubImage(10, 5, 31, 16), controller.content);
+        assertEquals(34, controller.content.array[15 * 31]);
+        assertEquals(35, controller.content.array[30]);
+
+        //The region was sent, so nothing is dirty anymore
+        assertFalse(canvas.isDirty());
+        assertNull(canvas.getDirtyRegion());
+        canvas.flush(controller);
+        assertEquals(1, controller.updates);
+
+        //The image that the canvas started from is not changed
+        assertEquals(BACKGROUND, image.array[20 * 128 + 10]);
+    }
+
+    private static ArrayImage background() {
+        byte[] array = new byte[128 * 128];
+        Arrays.fill(array, BACKGROUND);
+        return new ArrayImage(array);
+    }
+
+    private static ArrayImage pattern(int width, int height) {
+        //Only colors that are not transparent
+        byte[] array = new byte[width * height];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = (byte) (8 + i % 200);
+        }
+        return new ArrayImage(array, width, height);
+    }
+
+    private static class RecordingController implements IMapController {
+        private int updates;
+        private ArrayImage content;
+        private int x, y;
+
+        @Override
+        public void update(@NotNull ArrayImage content, int x, int y) {
+            this.updates++;
+            this.content = content;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public void update(@NotNull ArrayImage content) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addViewer(Player player) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void removeViewer(OfflinePlayer player) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void clearViewers() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isViewing(OfflinePlayer player) {
+            return false;
+        }
+
+        @Override
+        public void sendContent(Player player) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void sendContent(Player player, boolean withoutQueue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void cancelSend() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
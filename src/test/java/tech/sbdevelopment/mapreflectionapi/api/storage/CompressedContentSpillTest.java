@@ -0,0 +1,85 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package tech.sbdevelopment.mapreflectionapi.api.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedContentSpillTest {
+    @Test
+    void roundTrip() throws IOException {
+        CompressedContentSpill spill = new CompressedContentSpill();
+        Random random = new Random(1);
+        for (int i = 0; i < 2_000; i++) {
+            byte[] data = ContentSamples.create(random, i);
+            SpilledContent spilled = spill.spill(data);
+
+            assertArrayEquals(data, spilled.load(), "Sample " + i + " differs");
+            assertEquals(CompressedContentSpill.compress(data).length, spilled.getMemoryUsage());
+        }
+    }
+
+    @Test
+    void corruptInput() {
+        byte[] data = ContentSamples.create(new Random(2), 1);
+        byte[] compressed = CompressedContentSpill.compress(data);
+
+        assertThrows(IOException.class, () -> CompressedContentSpill.decompress(compressed, data.length + 1));
+        assertThrows(IOException.class, () -> CompressedContentSpill.decompress(Arrays.copyOf(compressed, compressed.length / 2), data.length));
+        assertThrows(IOException.class, () -> CompressedContentSpill.decompress(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, data.length));
+    }
+
+    @Test
+    void diskRoundTrip(@TempDir Path folder) throws IOException {
+        DiskContentSpill spill = new DiskContentSpill(folder.toFile());
+        Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            byte[] data = ContentSamples.create(random, i);
+            SpilledContent spilled = spill.spill(data);
+
+            assertArrayEquals(data, spilled.load(), "Sample " + i + " differs");
+            assertEquals(0, spilled.getMemoryUsage());
+            spilled.discard();
+        }
+        assertEquals(0, countFiles(folder.toFile()), "Discarded content left files behind");
+    }
+
+    @Test
+    void diskClearsOldFiles(@TempDir Path folder) throws IOException {
+        DiskContentSpill first = new DiskContentSpill(folder.toFile());
+        SpilledContent spilled = first.spill(new byte[128 * 128]);
+        assertEquals(1, countFiles(folder.toFile()));
+
+        new DiskContentSpill(folder.toFile());
+        assertEquals(0, countFiles(folder.toFile()));
+        assertThrows(IOException.class, spilled::load);
+    }
+
+    private static int countFiles(File folder) {
+        File[] files = folder.listFiles();
+        return files != null ? files.length : 0;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package tech.sbdevelopment.mapreflectionapi.api.storage;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Content to test the {@link ContentSpill}s with: random bytes, runs of random length and repeating patterns.
+ */
+final class ContentSamples {
+    private ContentSamples() {
+    }
+
+    /**
+     * Create a sample
+     *
+     * @param random The random source
+     * @param index  The index of the sample, which selects the kind of content
+     * @return The bytes of the sample
+     */
+    static byte[] create(Random random, int index) {
+        //Mostly short buffers, with a full map every now and then
+        int length = index % 10 == 0 ? 128 * 128 : random.nextInt(2048);
+        byte[] data = new byte[length];
+        switch (index % 5) {
+            case 0: //Random bytes
+                random.nextBytes(data);
+                break;
+            case 1: //Runs of random length, like map content
+                for (int i = 0; i < length; ) {
+                    int run = Math.min(length - i, 1 + random.nextInt(300));
+                    Arrays.fill(data, i, i + run, (byte) random.nextInt(256));
+                    i += run;
+                }
+                break;
+            case 2: //Runs that are just too short to be encoded as a repeat
+                for (int i = 0; i < length; i++) {
+                    data[i] = (byte) (i / 2 % 2 == 0 ? 4 : 8);
+                }
+                break;
+            case 3: //One color
+                Arrays.fill(data, (byte) random.nextInt(256));
+                break;
+            default: //Mixed runs and random bytes
+                for (int i = 0; i < length; i++) {
+                    data[i] = random.nextInt(4) == 0 ? (byte) random.nextInt(256) : (i > 0 ? data[i - 1] : 0);
+                }
+                break;
+        }
+        return data;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package tech.sbdevelopment.mapreflectionapi.api.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapContentSpillTest {
+    private static final int SLOT_SIZE = 128 * 128;
+
+    @Test
+    void directRoundTrip() throws IOException {
+        roundTrip(new OffHeapContentSpill());
+    }
+
+    @Test
+    void mappedRoundTrip(@TempDir Path folder) throws IOException {
+        roundTrip(new OffHeapContentSpill(folder.resolve("content.map").toFile()));
+    }
+
+    private static void roundTrip(OffHeapContentSpill spill) throws IOException {
+        Random random = new Random(1);
+        List<byte[]> samples = new ArrayList<>();
+        List<SpilledContent> spilled = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            byte[] data = ContentSamples.create(random, i);
+            samples.add(data);
+            spilled.add(spill.spill(data));
+        }
+
+        //Load after everything is stored, so a slot that is handed out twice shows up
+        for (int i = 0; i < samples.size(); i++) {
+            assertArrayEquals(samples.get(i), spilled.get(i).load(), "Sample " + i + " differs");
+            assertEquals(0, spilled.get(i).getMemoryUsage());
+        }
+    }
+
+    @Test
+    void contentOverMultipleSlots() throws IOException {
+        OffHeapContentSpill spill = new OffHeapContentSpill();
+        byte[] data = new byte[SLOT_SIZE * 2 + 100];
+        new Random(2).nextBytes(data);
+
+        SpilledContent spilled = spill.spill(data);
+        assertEquals(3L * SLOT_SIZE, spill.getUsed());
+        assertArrayEquals(data, spilled.load());
+    }
+
+    @Test
+    void slotsAreReused() throws IOException {
+        OffHeapContentSpill spill = new OffHeapContentSpill();
+        List<SpilledContent> spilled = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            spilled.add(spill.spill(new byte[SLOT_SIZE]));
+        }
+        long capacity = spill.getCapacity();
+        assertEquals(300L * SLOT_SIZE, spill.getUsed());
+        assertTrue(capacity >= spill.getUsed());
+
+        for (SpilledContent content : spilled) {
+            content.discard();
+            //Discarding twice must not free the slots twice
+            content.discard();
+        }
+        assertEquals(0, spill.getUsed());
+
+        for (int i = 0; i < 300; i++) {
+            spill.spill(new byte[SLOT_SIZE]);
+        }
+        assertEquals(capacity, spill.getCapacity(), "The freed slots were not reused");
+    }
+
+    @Test
+    void concurrentAccess() throws Exception {
+        OffHeapContentSpill spill = new OffHeapContentSpill();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                long seed = thread;
+                futures.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 500; i++) {
+                        byte[] data = ContentSamples.create(random, i);
+                        SpilledContent spilled = spill.spill(data);
+                        assertArrayEquals(data, spilled.load(), "Sample " + i + " differs");
+                        spilled.discard();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, spill.getUsed());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of MapReflectionAPI.
+ * Copyright (c) 2022-2023 inventivetalent / SBDevelopment - All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package tech.sbdevelopment.mapreflectionapi.api.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RleContentSpillTest {
+    @Test
+    void roundTrip() throws IOException {
+        RleContentSpill spill = new RleContentSpill();
+        Random random = new Random(1);
+        for (int i = 0; i < 20_000; i++) {
+            byte[] data = ContentSamples.create(random, i);
+            byte[] encoded = spill.encode(data);
+
+            assertArrayEquals(data, RleContentSpill.decode(encoded, data.length), "Sample " + i + " differs");
+            assertArrayEquals(data, RleContentSpill.decode(ByteBuffer.wrap(encoded), data.length), "Sample " + i + " differs from the buffer");
+            assertArrayEquals(data, spill.spill(data).load(), "Sample " + i + " differs after spilling");
+        }
+    }
+
+    @Test
+    void worstCaseSize() {
+        //Every run of literals costs one control byte per 128 bytes
+        RleContentSpill spill = new RleContentSpill();
+        Random random = new Random(2);
+        for (int i = 0; i < 2_000; i++) {
+            byte[] data = ContentSamples.create(random, i);
+            int encoded = spill.encode(data).length;
+            assertTrue(encoded <= data.length + data.length / 128 + 2, "Sample " + i + " encodes to " + encoded + " bytes");
+        }
+
+        byte[] pairs = new byte[128 * 128];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = (byte) (i / 2 % 2 == 0 ? 4 : 8);
+        }
+        assertEquals(pairs.length + pairs.length / 128, spill.encode(pairs).length);
+    }
+
+    @Test
+    void repeatsCompress() {
+        byte[] data = new byte[128 * 128];
+        Arrays.fill(data, (byte) 34);
+        //Every control byte repeats the color 128 times
+        assertEquals(data.length / 128 * 2, new RleContentSpill().encode(data).length);
+    }
+
+    @Test
+    void corruptInput() {
+        RleContentSpill spill = new RleContentSpill();
+        byte[] data = ContentSamples.create(new Random(3), 1);
+        byte[] encoded = spill.encode(data);
+
+        //Too short, too long, cut off in the middle of a run and a literal that is longer than the input
+        assertThrows(IOException.class, () -> RleContentSpill.decode(encoded, data.length + 1));
+        assertThrows(IOException.class, () -> RleContentSpill.decode(encoded, data.length - 1));
+        assertThrows(IOException.class, () -> RleContentSpill.decode(Arrays.copyOf(encoded, encoded.length - 1), data.length));
+        assertThrows(IOException.class, () -> RleContentSpill.decode(new byte[]{127, 1, 2}, 128));
+        assertThrows(IOException.class, () -> RleContentSpill.decode(ByteBuffer.wrap(new byte[]{127, 1, 2}), 128));
+        assertThrows(IOException.class, () -> RleContentSpill.decode(new byte[]{-127}, 128));
+        assertThrows(IOException.class, () -> RleContentSpill.decode(ByteBuffer.wrap(new byte[]{-127}), 128));
+        assertThrows(IOException.class, () -> RleContentSpill.decode(new byte[]{-127, 5}, 16));
+    }
+}